@@ -0,0 +1,184 @@
+package com.mayankrastogi.cs587.documentmanager;
+
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentRevision;
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.entities.Permission;
+import com.mayankrastogi.cs587.documentmanager.entities.Role;
+import com.mayankrastogi.cs587.documentmanager.entities.User;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRevisionRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.LabelRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The labels, roles and users of the demo data, built in memory, plus stand-ins for the repositories and the field
+ * injection Spring would otherwise do, so that benchmarks can run without an application context.
+ */
+public final class BenchmarkFixtures {
+
+    public static final List<String> LABEL_NAMES = List.of("Unclassified", "Confidential", "Secret", "TopSecret");
+
+    private BenchmarkFixtures() {
+    }
+
+    public static List<Label> labels() {
+        var labels = new ArrayList<Label>();
+        for (int rank = 0; rank < LABEL_NAMES.size(); rank++) {
+            var label = new Label(LABEL_NAMES.get(rank), rank);
+            label.setId(rank + 1);
+            labels.add(label);
+        }
+        return labels;
+    }
+
+    /**
+     * The demo roles by id: a reader and a user per label, inheriting from the reader below, plus the admin roles.
+     */
+    public static Map<String, Role> roles() {
+        var roles = new LinkedHashMap<String, Role>();
+        Role lowerReader = null;
+        for (var label : LABEL_NAMES) {
+            var prefix = Character.toLowerCase(label.charAt(0)) + label.substring(1);
+            var reader = new Role(prefix + "Reader", lowerReader == null ? List.of() : List.of(lowerReader),
+                    new Permission("read" + label));
+            roles.put(reader.getId(), reader);
+            var user = new Role(prefix + "User", List.of(reader), new Permission("write" + label));
+            roles.put(user.getId(), user);
+            lowerReader = reader;
+        }
+        put(roles, new Role("topSecretAdmin", new Permission("downgradeTopSecret"), new Permission("upgradeSecret")));
+        put(roles, new Role("secretAdmin", new Permission("downgradeSecret"), new Permission("upgradeConfidential")));
+        put(roles, new Role("confidentialAdmin", new Permission("downgradeConfidential"),
+                new Permission("upgradeUnclassified")));
+        put(roles, new Role("systemAdmin", new Permission("manageUsers")));
+        return roles;
+    }
+
+    public static User secretUser(Map<String, Role> roles) {
+        return new User("Secret", "User", "secret.user@email.com", "test", roles.get("secretUser"),
+                roles.get("secretAdmin"));
+    }
+
+    /**
+     * A {@link RoleRepository} answering the queries {@code RolePermissionClosure} makes from {@code roles}.
+     */
+    public static RoleRepository roleRepository(Map<String, Role> roles) {
+        return stub(RoleRepository.class, name -> {
+            switch (name) {
+                case "findAllIds":
+                    return new ArrayList<>(roles.keySet());
+                case "findAllPermissionEdges":
+                    return edges(roles, role -> role.getPermissions().stream().map(Permission::getId));
+                case "findAllParentEdges":
+                    return edges(roles, role -> role.getParents().stream().map(Role::getId));
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    public static LabelRepository labelRepository(List<Label> labels) {
+        return stub(LabelRepository.class, name -> {
+            if (name.equals("findAllByOrderByRankAscIdAsc"))
+                return labels;
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    public static UserRepository userRepository(User user) {
+        return stub(UserRepository.class, name -> {
+            if (name.equals("findByEmail"))
+                return user;
+            if (name.equals("findTokenGenerations"))
+                return List.of();
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    /**
+     * A {@link DocumentRevisionRepository} holding the revisions of a single document in memory, by version.
+     */
+    public static DocumentRevisionRepository revisionRepository() {
+        var revisions = new TreeMap<Long, DocumentRevision>();
+        return stub(DocumentRevisionRepository.class, (name, args) -> {
+            switch (name) {
+                case "save": {
+                    var revision = (DocumentRevision) args[0];
+                    revisions.put(revision.getVersion(), revision);
+                    return revision;
+                }
+                case "existsByDocumentId":
+                    return !revisions.isEmpty();
+                case "findByDocumentIdAndVersion":
+                    return Optional.ofNullable(revisions.get((Long) args[1]));
+                case "findFirstByDocumentIdOrderByVersionDesc":
+                    return Optional.ofNullable(revisions.lastEntry()).map(Map.Entry::getValue);
+                case "findByDocumentIdAndVersionLessThanOrderByVersionDesc":
+                    return revisions.headMap((Long) args[1]).descendingMap().values().stream()
+                            .limit(((Pageable) args[2]).getPageSize())
+                            .collect(Collectors.toList());
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    /**
+     * Sets a field the way {@code @Autowired} would.
+     */
+    public static void inject(Object target, String fieldName, Object value) {
+        var field = ReflectionUtils.findField(target.getClass(), fieldName);
+        if (field == null)
+            throw new IllegalArgumentException("No field `" + fieldName + "` in " + target.getClass());
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static void put(Map<String, Role> roles, Role role) {
+        roles.put(role.getId(), role);
+    }
+
+    private static List<RoleRepository.Edge> edges(Map<String, Role> roles,
+                                                   Function<Role, Stream<String>> targets) {
+        return roles.values().stream()
+                .flatMap(role -> targets.apply(role).map(target -> edge(role.getId(), target)))
+                .collect(Collectors.toList());
+    }
+
+    private static RoleRepository.Edge edge(String roleId, String targetId) {
+        return new RoleRepository.Edge() {
+            @Override
+            public String getRoleId() {
+                return roleId;
+            }
+
+            @Override
+            public String getTargetId() {
+                return targetId;
+            }
+        };
+    }
+
+    private static <T> T stub(Class<T> type, Function<String, Object> answers) {
+        return stub(type, (name, args) -> answers.apply(name));
+    }
+
+    private static <T> T stub(Class<T> type, BiFunction<String, Object[], Object> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> answers.apply(method.getName(), args)));
+    }
+}
@@ -0,0 +1,31 @@
+package com.mayankrastogi.cs587.documentmanager.entities;
+
+import com.mayankrastogi.cs587.documentmanager.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of collecting the effective permissions of a user, walking the roles they inherit from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserBenchmark {
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        user = BenchmarkFixtures.secretUser(BenchmarkFixtures.roles());
+    }
+
+    @Benchmark
+    public Set<Permission> getPermissions() {
+        return user.getPermissions();
+    }
+}
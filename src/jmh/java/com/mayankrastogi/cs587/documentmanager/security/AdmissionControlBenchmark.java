@@ -0,0 +1,67 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of admitting a request through {@link AdmissionControl} with every hardware thread sending requests, both when
+ * each thread is its own subject and when all of them contend for the same subject's bucket.
+ * <p>
+ * The read limit is raised far enough that most requests are admitted; {@code rejectedByDefaultLimits} measures the
+ * refusal path instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class AdmissionControlBenchmark {
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    private AdmissionControl generous;
+    private AdmissionControl strict;
+
+    @State(Scope.Thread)
+    public static class Subject {
+        String name;
+
+        @Setup
+        public void setUp(AdmissionControlBenchmark benchmark) {
+            name = "user" + benchmark.threads.incrementAndGet() + "@email.com";
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        var environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "security.admission.read.rate", "1000000000",
+                "security.admission.read.burst", "1000000")));
+        generous = new AdmissionControl(true, environment, new SimpleMeterRegistry());
+        strict = new AdmissionControl(true, new StandardEnvironment(), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public long distinctSubjects(Subject subject) {
+        return generous.admit(subject.name, EndpointClass.READ);
+    }
+
+    @Benchmark
+    public long sharedSubject() {
+        return generous.admit("secret.user@email.com", EndpointClass.READ);
+    }
+
+    @Benchmark
+    public long rejectedByDefaultLimits(Subject subject) {
+        return strict.admit(subject.name, EndpointClass.READ);
+    }
+}
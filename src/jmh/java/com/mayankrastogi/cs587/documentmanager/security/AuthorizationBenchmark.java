@@ -0,0 +1,72 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares permission checks against a precompiled {@link AuthorizationContext} with the string-concatenating
+ * {@code Set<String>} lookups they replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationBenchmark {
+
+    private Set<String> permissions;
+    private AuthorizationContext context;
+    private Label[] labels;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<GrantedAuthority> authorities = Stream
+                .of("secretUser", "secretAdmin", "readUnclassified", "readConfidential", "readSecret", "writeSecret",
+                        "downgradeSecret", "upgradeConfidential")
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+
+        permissions = authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toUnmodifiableSet());
+        context = AuthorizationContext.compile(authorities);
+        labels = Stream.of("Unclassified", "Confidential", "Secret", "TopSecret").map(Label::new).toArray(Label[]::new);
+    }
+
+    @Benchmark
+    public boolean canReadWithStringConcatenation() {
+        return permissions.contains("read" + nextLabel().getName());
+    }
+
+    @Benchmark
+    public boolean canReadWithAuthorizationContext() {
+        return context.isAllowed(Operation.READ, nextLabel());
+    }
+
+    @Benchmark
+    public Set<String> labelsAllowedToReadWithStringFiltering() {
+        return permissions
+                .stream()
+                .filter(p -> p.startsWith("read"))
+                .map(p -> p.replaceFirst("read", ""))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Benchmark
+    public Set<String> labelsAllowedToReadWithAuthorizationContext() {
+        return context.getReadableLabels();
+    }
+
+    private Label nextLabel() {
+        next = (next + 1) & 3;
+        return labels[next];
+    }
+}
@@ -0,0 +1,67 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.BenchmarkFixtures;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating a request from its bearer token: a full parse and signature check, and a hit in the
+ * {@link VerifiedTokenCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtTokenAuthenticationFilter filter;
+    private VerifiedTokenCache tokenCache;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        var jwtConfig = new JwtConfig();
+        BenchmarkFixtures.inject(jwtConfig, "secret", "JwtSecretKey");
+        BenchmarkFixtures.inject(jwtConfig, "expiration", 24 * 60 * 60);
+
+        var meterRegistry = new SimpleMeterRegistry();
+        tokenCache = new VerifiedTokenCache(10_000, meterRegistry);
+        var tokenRevocations = new TokenRevocations();
+        BenchmarkFixtures.inject(tokenRevocations, "expectedSubjects", 100_000);
+        BenchmarkFixtures.inject(tokenRevocations, "userRepository", BenchmarkFixtures.userRepository(null));
+        tokenRevocations.load();
+        filter = new JwtTokenAuthenticationFilter(jwtConfig, tokenCache, new PermissionCatalog(), tokenRevocations,
+                meterRegistry);
+
+        var now = System.currentTimeMillis();
+        token = Jwts.builder()
+                .setSubject("secret.user@email.com")
+                .claim(JwtTokenAuthenticationFilter.AUTHORITIES_CLAIM, List.of(
+                        "secretUser", "secretReader", "confidentialReader", "unclassifiedReader", "secretAdmin",
+                        "readUnclassified", "readConfidential", "readSecret", "writeSecret", "downgradeSecret",
+                        "upgradeConfidential"))
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TimeUnit.DAYS.toMillis(1)))
+                .signWith(SignatureAlgorithm.HS512, jwtConfig.getSecret().getBytes())
+                .compact();
+    }
+
+    @Benchmark
+    public Authentication parseAndVerify() {
+        return filter.verify(token).getAuthentication();
+    }
+
+    @Benchmark
+    public Authentication cachedLookup() {
+        return tokenCache.get(token, filter::verify).getAuthentication();
+    }
+}
@@ -0,0 +1,52 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a user's roles into login authorities through the {@link RolePermissionClosure}, with the user
+ * lookup stubbed out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDetailsServiceBenchmark {
+
+    private DocumentManagerUserDetailsService userDetailsService;
+    private RolePermissionClosure rolePermissionClosure;
+    private List<String> roleIds;
+
+    @Setup
+    public void setUp() {
+        var roles = BenchmarkFixtures.roles();
+        var user = BenchmarkFixtures.secretUser(roles);
+
+        rolePermissionClosure = new RolePermissionClosure();
+        BenchmarkFixtures.inject(rolePermissionClosure, "roleRepository", BenchmarkFixtures.roleRepository(roles));
+
+        userDetailsService = new DocumentManagerUserDetailsService();
+        BenchmarkFixtures.inject(userDetailsService, "userRepository", BenchmarkFixtures.userRepository(user));
+        BenchmarkFixtures.inject(userDetailsService, "rolePermissionClosure", rolePermissionClosure);
+
+        roleIds = List.of("secretUser", "secretAdmin");
+        rolePermissionClosure.authoritiesOf(roleIds);
+    }
+
+    @Benchmark
+    public List<GrantedAuthority> authoritiesOf() {
+        return rolePermissionClosure.authoritiesOf(roleIds);
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return userDetailsService.loadUserByUsername("secret.user@email.com");
+    }
+}
@@ -0,0 +1,94 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.mayankrastogi.cs587.documentmanager.BenchmarkFixtures;
+import com.mayankrastogi.cs587.documentmanager.audit.AuditLog;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentSummary;
+import com.mayankrastogi.cs587.documentmanager.security.AuthorizationContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cost of the clearance checks made for every document a request touches, each of them counted and audited,
+ * including filtering a page of documents down to the readable ones as {@code DocumentController.list} used to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentServiceBenchmark {
+
+    @Param({"20", "1000"})
+    private int documentCount;
+
+    private DocumentService documentService;
+    private AuditLog auditLog;
+    private List<DocumentSummary> documents;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        var labels = BenchmarkFixtures.labels();
+        var authorizationMetrics = new AuthorizationMetrics();
+        BenchmarkFixtures.inject(authorizationMetrics, "labelRepository", BenchmarkFixtures.labelRepository(labels));
+        BenchmarkFixtures.inject(authorizationMetrics, "meterRegistry", new SimpleMeterRegistry());
+        authorizationMetrics.registerCounters();
+        auditLog = new AuditLog(Files.createTempDirectory("audit").toString(), 65536, AuditLog.OverflowPolicy.DROP,
+                0, 1024, 1000, 64 * 1024 * 1024, 0, new SimpleMeterRegistry());
+        documentService = new DocumentService();
+        BenchmarkFixtures.inject(documentService, "authorizationMetrics", authorizationMetrics);
+        BenchmarkFixtures.inject(documentService, "auditLog", auditLog);
+
+        var authorities = Stream
+                .of("secretUser", "secretReader", "confidentialReader", "unclassifiedReader", "secretAdmin",
+                        "readUnclassified", "readConfidential", "readSecret", "writeSecret", "downgradeSecret",
+                        "upgradeConfidential")
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        var authentication = new UsernamePasswordAuthenticationToken("secret.user@email.com", null, authorities);
+        authentication.setDetails(AuthorizationContext.compile(authorities));
+        // Thread-scoped state is set up on the thread that runs the benchmark, which is where the context is read
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++)
+            documents.add(new DocumentSummary(i + 1, "Document" + (i + 1) + ".txt", labels.get(i % labels.size()),
+                    1024, Instant.EPOCH, 0));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        SecurityContextHolder.clearContext();
+        auditLog.close();
+    }
+
+    @Benchmark
+    public boolean canRead() {
+        next = next + 1 == documents.size() ? 0 : next + 1;
+        return documentService.canRead(documents.get(next));
+    }
+
+    @Benchmark
+    public Set<String> labelsAllowedToRead() {
+        return documentService.labelsAllowedToRead();
+    }
+
+    @Benchmark
+    public List<DocumentSummary> filterReadable() {
+        return documents.stream().filter(documentService::canRead).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,145 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.mayankrastogi.cs587.documentmanager.BenchmarkFixtures;
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentRevision;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRevisionRepository;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import com.mayankrastogi.cs587.documentmanager.storage.Delta;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.IterationParams;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording and reconstructing revisions of a 64 KiB text document edited a few lines at a time, for
+ * several snapshot intervals. The storage the history takes, and what keeping every revision in full would take, are
+ * reported as the {@code storedBytes} and {@code fullBytes} secondary results of {@link #reconstructLongestChain}, so
+ * they land in the results file along with the timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RevisionStoreBenchmark {
+
+    private static final int DOCUMENT_BYTES = 64 * 1024;
+    private static final int REVISIONS = 100;
+    private static final String[] WORDS = ("the of and to in is that for it as was with be by on not he this are or " +
+            "his from at which but have an they you were her she there been one all we their has would when if so " +
+            "no will can more other label secret document clearance").split(" ");
+
+    @Param({"1", "10", "50"})
+    private int snapshotInterval;
+
+    private RevisionStore revisionStore;
+    private DocumentRevision deepest;
+    private DocumentRevision snapshot;
+    private byte[] previous;
+    private byte[] latest;
+    private long storedBytes;
+    private long fullBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        var contentStore = new ContentStore(Files.createTempDirectory("revisions").toString(), 1024,
+                Duration.ofDays(7), 1024 * 1024, new SimpleMeterRegistry());
+        DocumentRevisionRepository revisionRepository = BenchmarkFixtures.revisionRepository();
+        revisionStore = new RevisionStore(revisionRepository, null, contentStore, null, snapshotInterval,
+                8 * 1024 * 1024, Duration.ofHours(1));
+
+        var random = new Random(42);
+        var text = new StringBuilder(words(random, DOCUMENT_BYTES));
+        var document = new Document("Revisions.txt", BenchmarkFixtures.labels().get(0), null, 0);
+        document.setId(1);
+
+        for (var version = 0; version < REVISIONS; version++) {
+            if (version > 0)
+                edit(text, random);
+            previous = latest;
+            latest = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            var content = contentStore.store(text.toString());
+            document.setVersion(version);
+            document.setContentHash(content.getHash());
+            document.setSize(content.getLength());
+            var revision = revisionStore.record(document);
+
+            storedBytes += revision.getStoredSize();
+            fullBytes += revision.getSize();
+        }
+
+        List<DocumentRevision> revisions = revisionRepository.findByDocumentIdAndVersionLessThanOrderByVersionDesc(1,
+                Long.MAX_VALUE, PageRequest.of(0, REVISIONS));
+        // As if the reclaimer had run, so that every delta revision has to be rebuilt from its snapshot
+        revisions.forEach(revision -> revision.setContentsReleased(true));
+        deepest = revisions.stream().max(Comparator.comparingInt(DocumentRevision::getChainLength)).orElseThrow();
+        snapshot = revisions.stream().filter(DocumentRevision::isSnapshot).findFirst().orElseThrow();
+    }
+
+    /**
+     * Reconstructs the revision furthest from its snapshot, which is the worst case for the snapshot interval.
+     */
+    @Benchmark
+    public byte[] reconstructLongestChain(Storage storage) throws IOException {
+        return revisionStore.contentsOf(deepest);
+    }
+
+    @Benchmark
+    public byte[] readSnapshot() throws IOException {
+        return revisionStore.contentsOf(snapshot);
+    }
+
+    @Benchmark
+    public byte[] computeDelta() {
+        return Delta.compute(previous, latest);
+    }
+
+    /**
+     * Bytes the history of the trial takes, and would take with every revision in full. JMH sums event counters over
+     * the measurement iterations, so each iteration reports its share of the totals.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Storage {
+        public double storedBytes;
+        public double fullBytes;
+
+        @Setup(Level.Iteration)
+        public void report(RevisionStoreBenchmark benchmark, IterationParams iteration) {
+            var share = 1.0 / iteration.getCount();
+            storedBytes = benchmark.storedBytes * share;
+            fullBytes = benchmark.fullBytes * share;
+        }
+    }
+
+    /**
+     * Replaces a few words somewhere in the text, and now and then adds a line at the end.
+     */
+    private static void edit(StringBuilder text, Random random) {
+        var start = random.nextInt(text.length() - 200);
+        text.replace(start, start + random.nextInt(200), words(random, 20 + random.nextInt(200)));
+        if (random.nextInt(4) == 0)
+            text.append(words(random, 80)).append('\n');
+    }
+
+    private static String words(Random random, int length) {
+        var words = new StringBuilder(length + 16);
+        while (words.length() < length) {
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+            words.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        return words.toString();
+    }
+}
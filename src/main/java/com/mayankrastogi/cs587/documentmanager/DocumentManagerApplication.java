@@ -1,22 +1,27 @@
 package com.mayankrastogi.cs587.documentmanager;
 
+import com.mayankrastogi.cs587.documentmanager.dataset.DatasetGenerator;
 import com.mayankrastogi.cs587.documentmanager.entities.*;
 import com.mayankrastogi.cs587.documentmanager.repositories.*;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 @Slf4j
 @SpringBootApplication
+@EnableScheduling
 public class DocumentManagerApplication {
 
     private static final String[] paragraphs = {
@@ -36,6 +41,9 @@ public class DocumentManagerApplication {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private ContentStore contentStore;
+
     public static void main(String[] args) {
         SpringApplication.run(DocumentManagerApplication.class, args);
     }
@@ -46,24 +54,32 @@ public class DocumentManagerApplication {
             LabelRepository labelRepository,
             DocumentRepository documentRepository,
             RoleRepository roleRepository,
-            PermissionRepository permissionRepository) {
+            PermissionRepository permissionRepository,
+            ObjectProvider<DatasetGenerator> datasetGenerator) {
 
         return (args) -> {
 
+            if (labelRepository.count() > 0) {
+                log.info("Found existing data, skipping the demo seed.");
+                return;
+            }
+
             log.info("Creating labels...");
             var labelIDs = Arrays.asList("Unclassified", "Confidential", "Secret", "TopSecret");
-            labelIDs.stream().map(Label::new)
-                    .forEach(labelRepository::save);
+            for (int rank = 0; rank < labelIDs.size(); rank++)
+                labelRepository.save(new Label(labelIDs.get(rank), rank));
             log.info("Labels: " + labelRepository.findAll());
 
             log.info("Creating Documents...");
-            LongStream.range(0, paragraphs.length)
-                    .mapToObj(i -> new Document(
-                            "Document" + (i + 1) + ".txt",
-                            labelRepository.findById((i % 4) + 1).orElse(null),
-                            paragraphs[(int) i]
-                    ))
-                    .forEach(documentRepository::save);
+            for (int i = 0; i < paragraphs.length; i++) {
+                var content = contentStore.store(paragraphs[i]);
+                documentRepository.save(new Document(
+                        "Document" + (i + 1) + ".txt",
+                        labelRepository.findById((long) (i % 4) + 1).orElse(null),
+                        content.getHash(),
+                        content.getLength()
+                ));
+            }
             log.info("Documents: " + documentRepository.findAll());
 
             log.info("Creating permissions...");
@@ -79,12 +95,20 @@ public class DocumentManagerApplication {
             log.info("Permissions: " + permissionRepository.findAll());
 
             log.info("Creating roles...");
+            Role lowerReader = null;
             for (var id : labelIDs) {
-                var userRole = new Role(
-                        id.replaceFirst("^.", id.substring(0, 1).toLowerCase()) + "User",
-                        getPermissionsForAllLabelsBelow(id, labelRepository, permissionRepository)
-                );
-                roleRepository.save(userRole);
+                var roleIdPrefix = id.replaceFirst("^.", id.substring(0, 1).toLowerCase());
+                var reader = roleRepository.save(new Role(
+                        roleIdPrefix + "Reader",
+                        lowerReader == null ? List.of() : List.of(lowerReader),
+                        permissionRepository.findById("read" + id).get()
+                ));
+                roleRepository.save(new Role(
+                        roleIdPrefix + "User",
+                        List.of(reader),
+                        permissionRepository.findById("write" + id).get()
+                ));
+                lowerReader = reader;
             }
 
             var topSecretUser = roleRepository.findById("topSecretUser").get();
@@ -132,23 +156,8 @@ public class DocumentManagerApplication {
             );
             userRepository.saveAll(users);
             log.info("Users: " + userRepository.findAll());
-        };
-    }
 
-    private Permission[] getPermissionsForAllLabelsBelow(String labelName, LabelRepository labelRepository, PermissionRepository permissionRepository) {
-        var label = labelRepository.findByName(labelName);
-        var readPermissions = permissionRepository
-                .findAllByIdIn(
-                        labelRepository.findAllByIdLessThanEqual(label.getId())
-                                .stream()
-                                .map(l -> "read" + l.getName())
-                                .collect(Collectors.toList())
-                );
-        var writePermission = permissionRepository.findById("write" + labelName).get();
-
-        readPermissions.add(writePermission);
-        var permissionArray = new Permission[readPermissions.size()];
-        readPermissions.toArray(permissionArray);
-        return permissionArray;
+            datasetGenerator.ifAvailable(DatasetGenerator::generate);
+        };
     }
 }
@@ -0,0 +1,32 @@
+package com.mayankrastogi.cs587.documentmanager.audit;
+
+import lombok.Value;
+
+/**
+ * A clearance decision on a document, or a reclassification of one.
+ */
+@Value
+public class AuditEvent {
+
+    public static final String RECLASSIFY = "RECLASSIFY";
+
+    /**
+     * When the event happened, in milliseconds since the epoch.
+     */
+    long timestamp;
+    /**
+     * Name of the user who asked, or {@code anonymous}.
+     */
+    String subject;
+    /**
+     * The operation that was checked, or {@link #RECLASSIFY}.
+     */
+    String action;
+    long documentId;
+    String label;
+    /**
+     * The new label of a reclassified document, otherwise {@code null}.
+     */
+    String targetLabel;
+    boolean allowed;
+}
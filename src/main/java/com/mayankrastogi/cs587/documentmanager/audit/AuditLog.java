@@ -0,0 +1,322 @@
+package com.mayankrastogi.cs587.documentmanager.audit;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.entities.Labeled;
+import com.mayankrastogi.cs587.documentmanager.security.Operation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Audit trail of clearance decisions and reclassifications, kept in append-only segment files under
+ * {@code audit.directory}.
+ * <p>
+ * Request threads only hand events to a bounded {@link AuditRingBuffer}. A single background thread drains it in
+ * batches, appends them to the current segment, forces the segment to disk every {@code audit.fsync-interval-millis},
+ * and starts a new segment once the current one reaches {@code audit.segment-bytes}. What happens when the buffer is
+ * full is set by {@code audit.overflow-policy}.
+ * <p>
+ * Each event is one tab-separated line: timestamp, subject, action, document id, label, target label, decision.
+ * Segments are named after the time they were started, which {@link #read} uses to skip segments outside a time range.
+ */
+@Slf4j
+@Component
+public class AuditLog {
+
+    /**
+     * What {@link #record} does when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the event right away.
+         */
+        DROP,
+        /**
+         * Wait up to {@code audit.block-timeout-millis} for the writer to make room, then drop the event.
+         */
+        BLOCK
+    }
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    /**
+     * How long an event may wait in the buffer before it is written. Bounds how far before its segment's start an
+     * event can be, when scanning by time.
+     */
+    private static final long MAX_WRITE_LAG_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path directory;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final int batchSize;
+    private final long fsyncIntervalMillis;
+    private final long segmentBytes;
+    private final int maxSegments;
+
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final Counter acceptedCounter;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter writeErrorCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer fsyncTimer;
+
+    // Owned by the writer thread
+    private FileChannel segment;
+    private long segmentSize;
+    private long segmentSequence;
+    private long lastSync;
+
+    public AuditLog(@Value("${audit.directory:data/audit}") String directory,
+                    @Value("${audit.buffer-capacity:65536}") int bufferCapacity,
+                    @Value("${audit.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                    @Value("${audit.block-timeout-millis:100}") long blockTimeoutMillis,
+                    @Value("${audit.batch-size:1024}") int batchSize,
+                    @Value("${audit.fsync-interval-millis:1000}") long fsyncIntervalMillis,
+                    @Value("${audit.segment-bytes:67108864}") long segmentBytes,
+                    @Value("${audit.max-segments:0}") int maxSegments,
+                    MeterRegistry meterRegistry) throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.batchSize = batchSize;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.buffer = new AuditRingBuffer<>(bufferCapacity);
+        Files.createDirectories(this.directory);
+
+        this.acceptedCounter = Counter.builder("audit.events").tag("outcome", "accepted").register(meterRegistry);
+        this.droppedCounter = Counter.builder("audit.events").tag("outcome", "dropped").register(meterRegistry);
+        this.writtenCounter = Counter.builder("audit.events.written").register(meterRegistry);
+        this.writeErrorCounter = Counter.builder("audit.write.errors").register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("audit.batch.size").register(meterRegistry);
+        this.fsyncTimer = Timer.builder("audit.fsync").register(meterRegistry);
+        Gauge.builder("audit.buffer.depth", buffer, AuditRingBuffer::size).register(meterRegistry);
+
+        this.writer = new Thread(this::writeLoop, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        log.info("Writing audit trail to " + this.directory);
+    }
+
+    public void decided(Operation operation, Labeled document, boolean allowed) {
+        record(new AuditEvent(System.currentTimeMillis(), currentSubject(), operation.name(), document.getId(),
+                document.getLabel().getName(), null, allowed));
+    }
+
+    public void reclassified(Labeled document, Label from) {
+        record(new AuditEvent(System.currentTimeMillis(), currentSubject(), AuditEvent.RECLASSIFY, document.getId(),
+                from.getName(), document.getLabel().getName(), true));
+    }
+
+    /**
+     * Hands {@code event} to the writer, applying the overflow policy if the buffer is full. Returns whether the event
+     * was accepted.
+     */
+    public boolean record(AuditEvent event) {
+        if (buffer.offer(event)) {
+            acceptedCounter.increment();
+            return true;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            var deadline = System.nanoTime() + blockTimeoutNanos;
+            while (running && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                if (buffer.offer(event)) {
+                    acceptedCounter.increment();
+                    return true;
+                }
+            }
+        }
+        droppedCounter.increment();
+        return false;
+    }
+
+    /**
+     * The events recorded from {@code from} (inclusive) to {@code to} (exclusive), in the order they were written,
+     * which is roughly but not strictly by time. The stream reads segments lazily and must be closed.
+     */
+    public Stream<AuditEvent> read(Instant from, Instant to) throws IOException {
+        var fromMillis = from.toEpochMilli();
+        var toMillis = to.toEpochMilli();
+
+        List<Path> segments;
+        try (var paths = Files.list(directory)) {
+            segments = paths.filter(AuditLog::isSegment).sorted().collect(Collectors.toList());
+        }
+
+        var overlapping = new ArrayList<Path>();
+        for (int i = 0; i < segments.size(); i++) {
+            // Every event in a segment was written, and so recorded, before the next segment was started
+            if (i + 1 < segments.size() && startOf(segments.get(i + 1)) <= fromMillis)
+                continue;
+            if (startOf(segments.get(i)) >= toMillis + MAX_WRITE_LAG_MILLIS)
+                break;
+            overlapping.add(segments.get(i));
+        }
+
+        return overlapping.stream()
+                .flatMap(AuditLog::lines)
+                .map(AuditLog::parse)
+                .filter(event -> event != null && event.getTimestamp() >= fromMillis && event.getTimestamp() < toMillis);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<AuditEvent>(batchSize);
+        var lines = new StringBuilder();
+        while (running || buffer.size() > 0) {
+            buffer.drainTo(batch, batchSize);
+            try {
+                if (!batch.isEmpty()) {
+                    write(batch, lines);
+                    batchSizeSummary.record(batch.size());
+                    writtenCounter.increment(batch.size());
+                } else if (running) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                if (System.currentTimeMillis() - lastSync >= fsyncIntervalMillis)
+                    sync();
+            } catch (IOException | RuntimeException e) {
+                // The writer is the only consumer, so it keeps going whatever a single batch did
+                writeErrorCounter.increment();
+                log.error("Could not write " + batch.size() + " audit event(s)", e);
+            }
+            batch.clear();
+            lines.setLength(0);
+        }
+
+        try {
+            sync();
+            if (segment != null)
+                segment.close();
+        } catch (IOException e) {
+            log.error("Could not close the audit segment", e);
+        }
+    }
+
+    private void write(List<AuditEvent> batch, StringBuilder lines) throws IOException {
+        for (var event : batch)
+            format(event, lines);
+        var bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        if (segment == null || (segmentSize > 0 && segmentSize + bytes.remaining() > segmentBytes))
+            rotate();
+        while (bytes.hasRemaining())
+            segmentSize += segment.write(bytes);
+    }
+
+    private void sync() throws IOException {
+        lastSync = System.currentTimeMillis();
+        if (segment == null)
+            return;
+        var start = System.nanoTime();
+        segment.force(false);
+        fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void rotate() throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        var name = String.format("%s%013d-%06d%s", SEGMENT_PREFIX, System.currentTimeMillis(), segmentSequence++,
+                SEGMENT_SUFFIX);
+        segment = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentSize = 0;
+
+        if (maxSegments > 0) {
+            try (var paths = Files.list(directory)) {
+                var segments = paths.filter(AuditLog::isSegment).sorted().collect(Collectors.toList());
+                for (int i = 0; i < segments.size() - maxSegments; i++)
+                    Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    private static void format(AuditEvent event, StringBuilder lines) {
+        lines.append(event.getTimestamp()).append('\t')
+                .append(sanitized(event.getSubject())).append('\t')
+                .append(event.getAction()).append('\t')
+                .append(event.getDocumentId()).append('\t')
+                .append(sanitized(event.getLabel())).append('\t')
+                .append(event.getTargetLabel() == null ? "-" : sanitized(event.getTargetLabel())).append('\t')
+                .append(event.isAllowed() ? "ALLOW" : "DENY").append('\n');
+    }
+
+    private static AuditEvent parse(String line) {
+        var fields = line.split("\t", -1);
+        if (fields.length != 7)
+            return null;
+        try {
+            return new AuditEvent(Long.parseLong(fields[0]), fields[1], fields[2], Long.parseLong(fields[3]),
+                    fields[4], fields[5].equals("-") ? null : fields[5], fields[6].equals("ALLOW"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Stream<String> lines(Path segment) {
+        try {
+            return Files.lines(segment, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String sanitized(String value) {
+        return value.indexOf('\t') < 0 && value.indexOf('\n') < 0 ? value : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private static boolean isSegment(Path path) {
+        var name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long startOf(Path segment) {
+        var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.indexOf('-', SEGMENT_PREFIX.length())));
+    }
+
+    private static String currentSubject() {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "anonymous" : authentication.getName();
+    }
+}
@@ -1,22 +1,54 @@
 package com.mayankrastogi.cs587.documentmanager.controllers;
 
+import com.mayankrastogi.cs587.documentmanager.audit.AuditLog;
 import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentSummary;
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentDeletedEvent;
 import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
 import com.mayankrastogi.cs587.documentmanager.repositories.LabelRepository;
+import com.mayankrastogi.cs587.documentmanager.search.DocumentIndex;
+import com.mayankrastogi.cs587.documentmanager.search.SearchHit;
+import com.mayankrastogi.cs587.documentmanager.services.DocumentCache;
+import com.mayankrastogi.cs587.documentmanager.services.DocumentCache.CachedDocument;
+import com.mayankrastogi.cs587.documentmanager.services.DocumentExportService;
 import com.mayankrastogi.cs587.documentmanager.services.DocumentService;
+import com.mayankrastogi.cs587.documentmanager.services.RevisionStore;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentPatch;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import com.mayankrastogi.cs587.documentmanager.storage.StoredContent;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Optional;
 
+@Slf4j
+@Timed(histogram = true)
 @RestController
 @RequestMapping("/documents")
 public class DocumentController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
     @Autowired
     private DocumentRepository documentRepository;
 
@@ -26,44 +58,154 @@ public class DocumentController {
     @Autowired
     private LabelRepository labelRepository;
 
+    @Autowired
+    private ContentStore contentStore;
+
+    @Autowired
+    private DocumentIndex documentIndex;
+
+    @Autowired
+    private DocumentExportService documentExportService;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Autowired
+    private DocumentCache documentCache;
+
+    @Autowired
+    private RevisionStore revisionStore;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Lists the documents the user is cleared to read, ordered by id. Pass the id of the last document of a page as
+     * {@code after} to get the next page.
+     */
     @GetMapping("/")
-    public List<Document> list() {
-        return StreamSupport.stream(documentRepository.findAll().spliterator(), false)
-                .filter(document -> documentService.labelsAllowedToRead().contains(document.getLabel().getName()))
-                .collect(Collectors.toList());
+    public List<DocumentSummary> list(@RequestParam(defaultValue = "0") long after,
+                                      @RequestParam(defaultValue = "20") int limit) {
+        var labels = documentService.labelsAllowedToRead();
+        if (labels.isEmpty())
+            return List.of();
+
+        var pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return documentRepository.findSummariesByLabelNameIn(labels, after, PageRequest.of(0, pageSize));
+    }
+
+    /**
+     * Streams every document the user is cleared to read, contents included, as newline-delimited JSON ordered by id.
+     */
+    @GetMapping(value = "/export", produces = NDJSON_VALUE)
+    public void export(HttpServletResponse response) throws IOException {
+        var labels = documentService.labelsAllowedToRead();
+        response.setContentType(NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        documentExportService.export(labels, response.getOutputStream());
     }
 
+    /**
+     * Full-text search over the documents the user is cleared to read, best matches first. Answers 400 for pages
+     * starting past {@link DocumentIndex#MAX_OFFSET}.
+     */
+    @GetMapping("/search")
+    public List<SearchHit> search(@RequestParam("q") String query,
+                                  @RequestParam(defaultValue = "0") int page,
+                                  @RequestParam(defaultValue = "20") int limit) {
+        var pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        var offset = (long) Math.max(0, page) * pageSize;
+        if (offset > DocumentIndex.MAX_OFFSET)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Search results can only be paged up to offset " + DocumentIndex.MAX_OFFSET + ".");
+        return documentIndex.search(query, documentService.labelsAllowedToRead(), (int) offset, pageSize);
+    }
+
+    /**
+     * Metadata of a document, tagged with its version. Answers 304 if the {@code If-None-Match} header has the current
+     * version.
+     */
     @GetMapping("/{id}")
-    public Document getDocument(@PathVariable long id) {
-        return documentRepository
-                .findById(id)
+    public DocumentSummary getDocument(@PathVariable long id, WebRequest request) {
+        var document = documentCache
+                .get(id)
+                .map(CachedDocument::getSummary)
                 .filter(documentService::canRead)
                 .orElseThrow(this::unauthorizedAccessException);
+        return request.checkNotModified(eTagOf(document.getVersion())) ? null : document;
     }
 
     @GetMapping("/name/{name}")
-    public Document getDocument(@PathVariable String name) {
-        var document = documentRepository.findByName(name);
-        if (documentService.canRead(document))
-            return document;
-        else
-            throw unauthorizedAccessException();
+    public DocumentSummary getDocument(@PathVariable String name, WebRequest request) {
+        var document = documentCache
+                .getByName(name)
+                .map(CachedDocument::getSummary)
+                .filter(documentService::canRead)
+                .orElseThrow(this::unauthorizedAccessException);
+        return request.checkNotModified(eTagOf(document.getVersion())) ? null : document;
+    }
+
+    /**
+     * Streams the contents of a document. Requests with a {@code Range} header get a 206 response with just the
+     * requested bytes, and requests whose {@code If-None-Match} header has the current version get a 304.
+     * <p>
+     * Clients that accept gzip get compressed contents exactly as they are stored, unless they asked for a range of
+     * the uncompressed bytes. Otherwise, contents of hot documents are served from memory.
+     */
+    @GetMapping("/{id}/contents")
+    public ResponseEntity<Resource> getContents(
+            @PathVariable long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        var gzip = range == null && acceptsGzip(acceptEncoding);
+        return documentCache
+                .getForContents(id)
+                .filter(document -> documentService.canRead(document.getSummary()))
+                .map(document -> {
+                    var version = document.getSummary().getVersion();
+                    var response = ResponseEntity
+                            .ok()
+                            .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                            .contentType(MediaType.TEXT_PLAIN);
+                    var compressed = gzip
+                            ? contentStore.loadCompressed(document.getContentHash())
+                            : Optional.<Resource>empty();
+                    if (compressed.isPresent())
+                        return response
+                                .eTag(gzipETagOf(version))
+                                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                                .body(compressed.get());
+                    var contents = documentCache.contentsOf(document);
+                    return response.eTag(eTagOf(version)).body(contents != null
+                            ? new ByteArrayResource(contents)
+                            : contentStore.load(document.getContentHash()));
+                })
+                .orElseThrow(this::unauthorizedAccessException);
     }
 
     @PostMapping("/")
-    public Document createDocument(@RequestBody Document document) {
-        if (documentService.canWrite(document)) {
-            var label = labelRepository.findByIdOrName(document.getLabel().getId(), document.getLabel().getName());
-            return documentRepository.save(new Document(document.getName(), label, document.getContents()));
+    public Document createDocument(@RequestBody Document document) throws IOException {
+        // Resolved first, so that clearance is checked against the label's name even if only its id was given
+        var label = document.getLabel() == null
+                ? null
+                : labelRepository.findByIdOrName(document.getLabel().getId(), document.getLabel().getName());
+        document.setLabel(label);
+        if (label != null && documentService.canWrite(document)) {
+            var content = contentStore.store(document.getContents());
+            var saved = documentRepository.save(new Document(document.getName(), label, content.getHash(), content.getLength()));
+            recordRevision(saved);
+            return saved;
         } else
             throw unauthorizedAccessException();
     }
 
     @PutMapping("/{id}/name")
-    public Document updateName(@PathVariable long id, @RequestBody Document doc) {
+    public Document updateName(@PathVariable long id, @RequestBody Document doc,
+                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         return documentRepository
                 .findById(id)
                 .filter(documentService::canWrite)
+                .map(document -> requireMatch(document.getVersion(), ifMatch, document))
                 .map(document -> {
                     document.setName(doc.getName());
                     return documentRepository.save(document);
@@ -71,57 +213,187 @@ public class DocumentController {
                 .orElseThrow(this::unauthorizedAccessException);
     }
 
-    @PutMapping("/{id}/contents")
-    public Document updateContents(@PathVariable long id, @RequestBody Document doc) {
-        return documentRepository
+    @PutMapping(value = "/{id}/contents", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Document updateContents(@PathVariable long id, @RequestBody Document doc,
+                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws IOException {
+        var document = documentRepository
                 .findById(id)
                 .filter(documentService::canWrite)
-                .map(document -> {
-                    document.setContents(doc.getContents());
-                    return documentRepository.save(document);
-                })
+                .map(d -> requireMatch(d.getVersion(), ifMatch, d))
                 .orElseThrow(this::unauthorizedAccessException);
+        return saveContents(document, contentStore.store(doc.getContents()));
+    }
+
+    /**
+     * Replaces the contents of a document with the raw request body, which is streamed to the content store without
+     * being buffered in memory.
+     */
+    @PutMapping(value = "/{id}/contents", consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public Document uploadContents(@PathVariable long id, InputStream contents,
+                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws IOException {
+        var document = documentRepository
+                .findById(id)
+                .filter(documentService::canWrite)
+                .map(d -> requireMatch(d.getVersion(), ifMatch, d))
+                .orElseThrow(this::unauthorizedAccessException);
+        return saveContents(document, contentStore.store(contents));
+    }
+
+    /**
+     * Applies byte-range edits and an optional append to the current contents, so that small changes to large
+     * documents need not re-send the whole body.
+     */
+    @PatchMapping(value = "/{id}/contents", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Document patchContents(@PathVariable long id, @RequestBody ContentPatch patch,
+                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws IOException {
+        var document = documentRepository
+                .findById(id)
+                .filter(documentService::canWrite)
+                .map(d -> requireMatch(d.getVersion(), ifMatch, d))
+                .orElseThrow(this::unauthorizedAccessException);
+        StoredContent content;
+        try {
+            content = contentStore.patch(document.getContentHash(), patch);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return saveContents(document, content);
     }
 
     @PutMapping("{id}/downgrade")
-    public Document downgradeDocument(@PathVariable long id) {
+    public Document downgradeDocument(@PathVariable long id,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         return documentRepository
                 .findById(id)
                 .filter(documentService::canDowngrade)
-                .map(document ->
-                        documentService
-                                .downgraded(document)
-                                .orElseThrow(() ->
-                                        new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                                                "Document is already at the lowest level of classification.")
-                                )
-                )
+                .map(document -> requireMatch(document.getVersion(), ifMatch, document))
+                .map(document -> {
+                    var from = document.getLabel();
+                    return documentService
+                            .downgraded(document)
+                            .map(d -> saveReclassified(d, from))
+                            .orElseThrow(() ->
+                                    new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                            "Document is already at the lowest level of classification.")
+                            );
+                })
                 .orElseThrow(this::unauthorizedAccessException);
     }
 
     @PutMapping("{id}/upgrade")
-    public Document upgradeDocument(@PathVariable long id) {
+    public Document upgradeDocument(@PathVariable long id,
+                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         return documentRepository
                 .findById(id)
                 .filter(documentService::canUpgrade)
-                .map(document ->
-                        documentService
-                                .upgraded(document)
-                                .orElseThrow(() ->
-                                        new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                                                "Document is already at the highest level of classification.")
-                                )
-                )
+                .map(document -> requireMatch(document.getVersion(), ifMatch, document))
+                .map(document -> {
+                    var from = document.getLabel();
+                    return documentService
+                            .upgraded(document)
+                            .map(d -> saveReclassified(d, from))
+                            .orElseThrow(() ->
+                                    new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                            "Document is already at the highest level of classification.")
+                            );
+                })
                 .orElseThrow(this::unauthorizedAccessException);
     }
 
     @DeleteMapping("/{id}")
-    public void deleteDocument(@PathVariable long id) {
+    public void deleteDocument(@PathVariable long id,
+                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         var document = documentRepository
-                .findById(id)
+                .findSummaryById(id)
                 .filter(documentService::canWrite)
+                .map(d -> requireMatch(d.getVersion(), ifMatch, d))
                 .orElseThrow(this::unauthorizedAccessException);
-        documentRepository.delete(document);
+        var contentHash = documentRepository.findContentHashById(document.getId()).orElse(null);
+        documentRepository.deleteDirectlyById(document.getId());
+        eventPublisher.publishEvent(new DocumentDeletedEvent(document.getId(), contentHash));
+    }
+
+    private Document saveReclassified(Document document, Label from) {
+        var saved = documentRepository.save(document);
+        revisionStore.reclassified(saved, from);
+        auditLog.reclassified(saved, from);
+        return saved;
+    }
+
+    /**
+     * Saves a document with new contents, recording them as a new revision.
+     */
+    private Document saveContents(Document document, StoredContent content) {
+        revisionStore.baseline(document);
+        document.setContentHash(content.getHash());
+        document.setSize(content.getLength());
+        var saved = documentRepository.save(document);
+        recordRevision(saved);
+        return saved;
+    }
+
+    /**
+     * Records the contents a document has just been saved with in its history. The new contents are already saved by
+     * then, so a failure is logged rather than reported: it leaves this version out of the history, and the next
+     * revision is a delta against the one before it.
+     */
+    private void recordRevision(Document document) {
+        try {
+            revisionStore.record(document);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not record revision " + document.getVersion() + " of document " + document.getId(), e);
+        }
+    }
+
+    private static String eTagOf(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * ETag of the gzipped representation of the contents, which differs from the identity one byte for byte and so
+     * cannot share its strong ETag.
+     */
+    private static String gzipETagOf(long version) {
+        return "\"" + version + "-gzip\"";
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        for (var coding : acceptEncoding.split(",")) {
+            var parameters = coding.split(";");
+            var name = parameters[0].trim();
+            var refused = parameters.length > 1 && parameters[1].trim().matches("q=0(\\.0*)?");
+            if ((name.equalsIgnoreCase("gzip") || name.equals("*")) && !refused)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code document} if {@code ifMatch} is absent, {@code *}, or lists an ETag of {@code version}, and
+     * rejects the request with 412 otherwise.
+     */
+    private static <T> T requireMatch(long version, String ifMatch, T document) {
+        if (ifMatch == null)
+            return document;
+
+        var eTag = eTagOf(version);
+        var gzipETag = gzipETagOf(version);
+        for (var candidate : ifMatch.split(",")) {
+            var trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(eTag) || trimmed.equals(gzipETag))
+                return document;
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Document has been modified since it was read.");
+    }
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    @ResponseStatus(value = HttpStatus.PRECONDITION_FAILED, reason = "Document was modified concurrently.")
+    public void concurrentModification() {
     }
 
     private ResponseStatusException unauthorizedAccessException() {
@@ -0,0 +1,138 @@
+package com.mayankrastogi.cs587.documentmanager.controllers;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentRevision;
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.entities.Labeled;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
+import com.mayankrastogi.cs587.documentmanager.services.DocumentService;
+import com.mayankrastogi.cs587.documentmanager.services.LabelLattice;
+import com.mayankrastogi.cs587.documentmanager.services.RevisionStore;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentPatch;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * History of the contents of a document. Every endpoint requires clearance to read the document as it is now, and
+ * serving the contents of a revision, or a diff from or to it, also requires clearance for the highest label the
+ * document had while the revision was current.
+ */
+@Timed(histogram = true)
+@RestController
+@RequestMapping("/documents/{id}/revisions")
+public class RevisionController {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private RevisionStore revisionStore;
+
+    @Autowired
+    private LabelLattice labelLattice;
+
+    /**
+     * Lists revisions newest first. Pass the version of the last revision of a page as {@code after} to get the next,
+     * older, page.
+     */
+    @GetMapping("/")
+    public List<DocumentRevision> listRevisions(@PathVariable long id,
+                                                @RequestParam(required = false) Long after,
+                                                @RequestParam(defaultValue = "20") int limit) {
+        var pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return revisionStore.list(readableDocument(id), after == null ? Long.MAX_VALUE : after, pageSize);
+    }
+
+    @GetMapping("/{version}/contents")
+    public ResponseEntity<Resource> getRevisionContents(@PathVariable long id, @PathVariable long version)
+            throws IOException {
+        var document = readableDocument(id);
+        var revision = readable(document, revisionOf(document, version));
+        return ResponseEntity
+                .ok()
+                .eTag("\"" + revision.getVersion() + "\"")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(revisionStore.load(revision));
+    }
+
+    /**
+     * The edits that turn revision {@code from} into revision {@code version}, in the form accepted by
+     * {@code PATCH /documents/{id}/contents}. Compares against the revision before it if {@code from} is not given.
+     */
+    @GetMapping("/{version}/diff")
+    public ContentPatch diffRevisions(@PathVariable long id, @PathVariable long version,
+                                      @RequestParam(required = false) Long from) throws IOException {
+        var document = readableDocument(id);
+        var revision = readable(document, revisionOf(document, version));
+        var base = from == null ? revisionStore.previous(revision).orElse(null) : revisionOf(document, from);
+        if (base != null)
+            readable(document, base);
+        try {
+            return revisionStore.diff(base, revision);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private Document readableDocument(long id) {
+        return documentRepository
+                .findById(id)
+                .filter(documentService::canRead)
+                .orElseThrow(this::unauthorizedAccessException);
+    }
+
+    /**
+     * Checks clearance for the label the revision was held at, which may be higher than the document's now. A
+     * revision with the document's current contents is readable along with the document.
+     */
+    private DocumentRevision readable(Document document, DocumentRevision revision) {
+        if (revision.getLabelId() == document.getLabel().getId()
+                || revision.getContentHash().equals(document.getContentHash()))
+            return revision;
+        return labelLattice
+                .byId(revision.getLabelId())
+                .filter(label -> documentService.canRead(heldAt(document, label)))
+                .map(label -> revision)
+                .orElseThrow(this::unauthorizedAccessException);
+    }
+
+    private DocumentRevision revisionOf(Document document, long version) {
+        return revisionStore
+                .find(document, version)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Document " + document.getId() + " has no revision " + version + "."));
+    }
+
+    private ResponseStatusException unauthorizedAccessException() {
+        return new ResponseStatusException(HttpStatus.FORBIDDEN,
+                "User does not have clearance to perform this operation.");
+    }
+
+    private static Labeled heldAt(Document document, Label label) {
+        return new Labeled() {
+            @Override
+            public long getId() {
+                return document.getId();
+            }
+
+            @Override
+            public Label getLabel() {
+                return label;
+            }
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.mayankrastogi.cs587.documentmanager.controllers;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Permission;
+import com.mayankrastogi.cs587.documentmanager.entities.Role;
+import com.mayankrastogi.cs587.documentmanager.events.TokensRevokedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.PermissionRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository.Edge;
+import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/roles")
+public class RoleController {
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @GetMapping("/")
+    public Iterable<Role> list() {
+        return roleRepository.findAll();
+    }
+
+    @GetMapping("/{id}")
+    public Role getRole(@PathVariable String id) {
+        return roleOf(id);
+    }
+
+    @PutMapping("/{id}/permissions")
+    public Role updatePermissions(@PathVariable String id, @RequestBody List<Permission> permissions) {
+        var role = roleOf(id);
+        var newPermissions = permissions.stream()
+                .map(p -> permissionRepository
+                        .findById(p.getId())
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                "Permission `" + p.getId() + "` does not exist.")))
+                .collect(Collectors.toList());
+        role.setPermissions(newPermissions);
+        var saved = roleRepository.save(role);
+        revokeTokensOfHolders(id);
+        return saved;
+    }
+
+    @PutMapping("/{id}/parents")
+    public Role updateParents(@PathVariable String id, @RequestBody List<Role> parents) {
+        var role = roleOf(id);
+        var newParents = parents.stream()
+                .map(r -> roleOf(r.getId()))
+                .collect(Collectors.toList());
+        var parentIds = newParents.stream().map(Role::getId).collect(Collectors.toList());
+        if (reachable(parentIds, Edge::getRoleId, Edge::getTargetId).contains(id))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Role `" + id + "` cannot inherit from itself, directly or through its parents.");
+        role.setParents(newParents);
+        var saved = roleRepository.save(role);
+        revokeTokensOfHolders(id);
+        return saved;
+    }
+
+    private Role roleOf(String id) {
+        return roleRepository
+                .findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Role `" + id + "` does not exist."));
+    }
+
+    /**
+     * Revokes the tokens of every user holding the role or a role inheriting from it, since tokens carry the
+     * permissions their user's roles granted when they were issued.
+     */
+    private void revokeTokensOfHolders(String roleId) {
+        var roleIds = reachable(List.of(roleId), Edge::getTargetId, Edge::getRoleId);
+        if (userRepository.incrementTokenGenerationsByRoleIds(roleIds) == 0)
+            return;
+        for (var generation : userRepository.findTokenGenerationsByRoleIds(roleIds))
+            eventPublisher.publishEvent(new TokensRevokedEvent(generation.getEmail(), generation.getTokenGeneration(), 0));
+    }
+
+    /**
+     * {@code roleIds} and every role reachable from them over the current parent edges, followed from {@code from} to
+     * {@code to}: from a role to its parents, or from a role to the roles inheriting from it.
+     */
+    private Set<String> reachable(Collection<String> roleIds, Function<Edge, String> from, Function<Edge, String> to) {
+        Map<String, List<String>> next = roleRepository.findAllParentEdges().stream()
+                .collect(Collectors.groupingBy(from, Collectors.mapping(to, Collectors.toList())));
+        var pending = new ArrayDeque<>(roleIds);
+        var visited = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            var current = pending.pop();
+            if (visited.add(current))
+                next.getOrDefault(current, List.of()).forEach(pending::push);
+        }
+        return visited;
+    }
+}
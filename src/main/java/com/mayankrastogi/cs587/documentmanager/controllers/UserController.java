@@ -1,32 +1,56 @@
 package com.mayankrastogi.cs587.documentmanager.controllers;
 
+import com.mayankrastogi.cs587.documentmanager.entities.RevokedSubject;
 import com.mayankrastogi.cs587.documentmanager.entities.Role;
 import com.mayankrastogi.cs587.documentmanager.entities.User;
+import com.mayankrastogi.cs587.documentmanager.events.TokensRevokedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.RevokedSubjectRepository;
 import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository;
 import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
+import com.mayankrastogi.cs587.documentmanager.security.TokenRevocations;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.stream.Collectors;
 
+@Timed(histogram = true)
 @RestController
 @RequestMapping("/users")
 public class UserController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private RevokedSubjectRepository revokedSubjectRepository;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private TokenRevocations tokenRevocations;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Lists users ordered by id. Pass the id of the last user of a page as {@code after} to get the next page.
+     */
     @GetMapping("/")
-    public Iterable<User> list() {
-        return userRepository.findAll();
+    public List<User> list(@RequestParam(defaultValue = "0") long after,
+                           @RequestParam(defaultValue = "20") int limit) {
+        var pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return userRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, pageSize));
     }
 
     @GetMapping("/{id}")
@@ -55,15 +79,19 @@ public class UserController {
     @PutMapping("/{id}/email")
     public User updateEmail(@PathVariable long id, @RequestBody User u) {
         var user = userRepository.findById(id).orElseThrow();
+        var oldEmail = user.getEmail();
         user.setEmail(u.getEmail());
-        return userRepository.save(user);
+        var saved = userRepository.save(user);
+        // Tokens name the user by email, so those issued for the old one must go
+        revokeTokensIssuedTo(oldEmail, saved.getTokenGeneration());
+        return saved;
     }
 
     @PutMapping("/{id}/password")
     public User updatePassword(@PathVariable long id, @RequestBody User u) {
         var user = userRepository.findById(id).orElseThrow();
         user.setPassword(passwordEncoder.encode(u.getPassword()));
-        return userRepository.save(user);
+        return saveAndRevokeTokens(user);
     }
 
     @PutMapping("/{id}/roles")
@@ -73,11 +101,34 @@ public class UserController {
                 .map(r -> roleRepository.findById(r.getId()).orElseThrow())
                 .collect(Collectors.toList());
         user.setRoles(newRoles);
-        return userRepository.save(user);
+        return saveAndRevokeTokens(user);
     }
 
     @DeleteMapping("/{id}")
     public void deleteUser(@PathVariable long id) {
-        userRepository.deleteById(id);
+        var user = userRepository.findById(id).orElseThrow();
+        userRepository.delete(user);
+        revokeTokensIssuedTo(user.getEmail(), user.getTokenGeneration());
+    }
+
+    /**
+     * Saves the user with a new token generation, so that all tokens issued to them so far are rejected.
+     */
+    private User saveAndRevokeTokens(User user) {
+        var generation = Math.max(user.getTokenGeneration(), tokenRevocations.currentGeneration(user.getEmail())) + 1;
+        user.setTokenGeneration(generation);
+        var saved = userRepository.save(user);
+        eventPublisher.publishEvent(new TokensRevokedEvent(saved.getEmail(), generation, 0));
+        return saved;
+    }
+
+    /**
+     * Rejects the tokens issued to an email that no longer names the user, recording it so that it stays rejected
+     * across restarts.
+     */
+    private void revokeTokensIssuedTo(String email, long generation) {
+        var notBefore = System.currentTimeMillis();
+        revokedSubjectRepository.save(new RevokedSubject(email, generation, notBefore));
+        eventPublisher.publishEvent(new TokensRevokedEvent(email, generation, notBefore));
     }
 }
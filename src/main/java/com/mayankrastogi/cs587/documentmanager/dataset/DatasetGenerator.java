@@ -0,0 +1,339 @@
+package com.mayankrastogi.cs587.documentmanager.dataset;
+
+import com.mayankrastogi.cs587.documentmanager.events.LabelChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.events.PermissionChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.events.RoleChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Generates a synthetic dataset on top of the demo data, for capacity testing. Enabled with
+ * {@code dataset.generate=true}, and run by the demo runner once the demo data is in place.
+ * <p>
+ * Labels beyond the demo ones are added above them, each with the same permissions and reader, user and admin roles
+ * as the demo labels. Users get the roles of a random label, picked by the weights in {@code dataset.role-mix}, and
+ * possibly some of the {@code dataset.roles} extra roles. Document sizes follow a log-normal distribution around
+ * {@code dataset.content.median-bytes}.
+ * <p>
+ * Rows are written with batched JDBC inserts by {@code dataset.workers} threads, bypassing JPA, with ids reserved up
+ * front from {@code hibernate_sequence}. The same {@code dataset.seed} always produces the same dataset.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("dataset.generate")
+public class DatasetGenerator {
+
+    private static final String[] WORDS = ("lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod " +
+            "tempor incididunt ut labore et dolore magna aliqua sapien faucibus molestie ac feugiat lectus dictumst " +
+            "quisque sagittis purus mauris augue neque gravida in fermentum pretium quam id leo vitae turpis " +
+            "pellentesque massa placerat duis ultricies lacus tincidunt tempus nec nam aliquam sem elementum nulla " +
+            "porttitor vestibulum morbi blandit maecenas accumsan vel facilisis volutpat est velit egestas").split(" ");
+
+    @Value("${dataset.labels:4}")
+    private int labelCount;
+
+    @Value("${dataset.documents:100000}")
+    private int documentCount;
+
+    @Value("${dataset.users:1000}")
+    private int userCount;
+
+    @Value("${dataset.roles:0}")
+    private int extraRoleCount;
+
+    /**
+     * Relative weights of users cleared as readers, users and admins of their label.
+     */
+    @Value("${dataset.role-mix:reader:60,user:35,admin:5}")
+    private String roleMix;
+
+    @Value("${dataset.content.median-bytes:2048}")
+    private int medianContentBytes;
+
+    @Value("${dataset.content.sigma:1.0}")
+    private double contentSigma;
+
+    @Value("${dataset.content.max-bytes:1048576}")
+    private int maxContentBytes;
+
+    @Value("${dataset.workers:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int workers;
+
+    @Value("${dataset.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${dataset.seed:42}")
+    private long seed;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ContentStore contentStore;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    public void generate() {
+        var start = System.currentTimeMillis();
+        var labels = generateLabels();
+        var roles = generateRoles(labels);
+        generateUsers(labels, roles);
+        generateDocuments(labels);
+
+        // Everything above bypassed JPA, so drop whatever the second-level and query caches hold
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+
+        log.info(String.format("Generated %d labels, %d roles, %d users and %d documents in %d ms.",
+                labels.size(), roles.size(), userCount, documentCount, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Adds labels above the existing ones until there are {@code dataset.labels}, with their permissions and roles.
+     * Returns all label names by id, lowest first.
+     */
+    private Map<Long, String> generateLabels() {
+        var labels = new LinkedHashMap<Long, String>();
+        jdbcTemplate.query("select id, name from label order by rank, id", (RowCallbackHandler) row ->
+                labels.put(row.getLong("id"), row.getString("name")));
+        var existingPermissions = new HashSet<>(jdbcTemplate.queryForList("select id from permission", String.class));
+
+        var missing = labelCount - labels.size();
+        if (missing <= 0)
+            return labels;
+
+        var firstId = reserveIds(missing);
+        var rank = labels.size();
+        var lowerLabel = labels.isEmpty() ? null : labels.values().stream().reduce((a, b) -> b).get();
+        for (int i = 0; i < missing; i++, rank++) {
+            var id = firstId + i;
+            var name = "Level" + (rank + 1);
+            jdbcTemplate.update("insert into label (id, name, rank) values (?, ?, ?)", id, name, rank);
+            labels.put(id, name);
+
+            var permissions = new ArrayList<>(List.of("read" + name, "write" + name, "downgrade" + name));
+            if (lowerLabel != null)
+                permissions.add("upgrade" + lowerLabel);
+            for (var permission : permissions) {
+                if (existingPermissions.add(permission)) {
+                    jdbcTemplate.update("insert into permission (id) values (?)", permission);
+                    eventPublisher.publishEvent(new PermissionChangedEvent(permission));
+                }
+            }
+
+            var prefix = roleIdPrefixOf(name);
+            var lowerReader = lowerLabel == null ? null : roleIdPrefixOf(lowerLabel) + "Reader";
+            insertRole(prefix + "Reader", List.of("read" + name), lowerReader == null ? List.of() : List.of(lowerReader));
+            insertRole(prefix + "User", List.of("write" + name), List.of(prefix + "Reader"));
+            insertRole(prefix + "Admin", lowerLabel == null
+                    ? List.of("downgrade" + name)
+                    : List.of("downgrade" + name, "upgrade" + lowerLabel), List.of());
+
+            eventPublisher.publishEvent(new LabelChangedEvent(id));
+            lowerLabel = name;
+        }
+        return labels;
+    }
+
+    /**
+     * Adds {@code dataset.roles} extra roles, each inheriting from the reader role of a random label. Returns their
+     * ids.
+     */
+    private List<String> generateRoles(Map<Long, String> labels) {
+        var random = new Random(seed);
+        var labelNames = new ArrayList<>(labels.values());
+        var roles = new ArrayList<String>(extraRoleCount);
+        for (int i = 1; i <= extraRoleCount; i++) {
+            var id = "datasetRole" + i;
+            var label = labelNames.get(random.nextInt(labelNames.size()));
+            insertRole(id, List.of(), List.of(roleIdPrefixOf(label) + "Reader"));
+            roles.add(id);
+        }
+        return roles;
+    }
+
+    private void generateUsers(Map<Long, String> labels, List<String> extraRoles) {
+        var password = passwordEncoder.encode("test");
+        var labelNames = new ArrayList<>(labels.values());
+        var existingRoles = Set.copyOf(jdbcTemplate.queryForList("select id from role", String.class));
+        var mix = parseRoleMix();
+        var totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        var firstId = reserveIds(userCount);
+
+        inParallel(userCount, (batch) -> {
+            var random = new Random(seed + batch);
+            var users = new ArrayList<Object[]>(batchSize);
+            var userRoles = new ArrayList<Object[]>(batchSize * 2);
+            for (int i = batch * batchSize; i < Math.min(userCount, (batch + 1) * batchSize); i++) {
+                var id = firstId + i;
+                users.add(new Object[]{id, "Dataset", "User " + (i + 1), "user" + (i + 1) + "@dataset.example",
+                        password});
+
+                var prefix = roleIdPrefixOf(labelNames.get(random.nextInt(labelNames.size())));
+                for (var role : rolesFor(prefix, pick(mix, totalWeight, random), existingRoles))
+                    userRoles.add(new Object[]{id, role});
+                if (!extraRoles.isEmpty() && random.nextBoolean())
+                    userRoles.add(new Object[]{id, extraRoles.get(random.nextInt(extraRoles.size()))});
+            }
+            jdbcTemplate.batchUpdate(
+                    "insert into user (id, first_name, last_name, email, password, token_generation) " +
+                            "values (?, ?, ?, ?, ?, 0)", users);
+            jdbcTemplate.batchUpdate("insert into user_roles (user_id, roles_id) values (?, ?)", userRoles);
+        });
+    }
+
+    private void generateDocuments(Map<Long, String> labels) {
+        var labelIds = new ArrayList<>(labels.keySet());
+        var firstId = reserveIds(documentCount);
+        var lastModified = Timestamp.from(Instant.now());
+
+        inParallel(documentCount, (batch) -> {
+            var random = new Random(seed + batch);
+            var documents = new ArrayList<Object[]>(batchSize);
+            for (int i = batch * batchSize; i < Math.min(documentCount, (batch + 1) * batchSize); i++) {
+                var id = firstId + i;
+                try {
+                    var content = contentStore.store(contents(random));
+                    documents.add(new Object[]{id, "Dataset" + (i + 1) + ".txt",
+                            labelIds.get(random.nextInt(labelIds.size())), content.getHash(), content.getLength(),
+                            lastModified});
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            jdbcTemplate.batchUpdate("insert into document (id, name, label_id, content_hash, size, last_modified, " +
+                    "version) values (?, ?, ?, ?, ?, ?, 0)", documents);
+        });
+    }
+
+    private void insertRole(String id, List<String> permissions, List<String> parents) {
+        jdbcTemplate.update("insert into role (id) values (?)", id);
+        for (var permission : permissions)
+            jdbcTemplate.update("insert into role_permissions (role_id, permissions_id) values (?, ?)", id, permission);
+        for (var parent : parents)
+            jdbcTemplate.update("insert into role_parents (role_id, parents_id) values (?, ?)", id, parent);
+        eventPublisher.publishEvent(new RoleChangedEvent(id));
+    }
+
+    /**
+     * Runs {@code batch} for every batch of {@code count} rows on {@code dataset.workers} threads, and waits for all of
+     * them to finish.
+     */
+    private void inParallel(int count, IntConsumer batch) {
+        var executor = Executors.newFixedThreadPool(Math.max(1, workers));
+        try {
+            var batches = (count + batchSize - 1) / batchSize;
+            var futures = new ArrayList<Future<?>>(batches);
+            for (int i = 0; i < batches; i++) {
+                var index = i;
+                futures.add(executor.submit(() -> batch.accept(index)));
+            }
+            for (var future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating the dataset", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not generate the dataset", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes {@code count} consecutive ids from {@code hibernate_sequence}, which every entity with a generated id
+     * draws from, and returns the first.
+     */
+    private long reserveIds(int count) {
+        var first = jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+        jdbcTemplate.execute("alter sequence hibernate_sequence restart with " + (first + count));
+        return first;
+    }
+
+    private String contents(Random random) {
+        var size = (int) Math.min(maxContentBytes,
+                Math.max(1, Math.round(medianContentBytes * Math.exp(contentSigma * random.nextGaussian()))));
+        var contents = new StringBuilder(size + 16);
+        while (contents.length() < size) {
+            if (contents.length() > 0)
+                contents.append(' ');
+            contents.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        contents.setLength(size);
+        return contents.toString();
+    }
+
+    private Map<String, Integer> parseRoleMix() {
+        var mix = new LinkedHashMap<String, Integer>();
+        for (var entry : roleMix.split(",")) {
+            var parts = entry.trim().split(":");
+            if (parts.length != 2 || !List.of("reader", "user", "admin").contains(parts[0]))
+                throw new IllegalArgumentException("Invalid dataset.role-mix entry `" + entry + "`.");
+            mix.put(parts[0], Integer.parseInt(parts[1]));
+        }
+        return mix;
+    }
+
+    private static String pick(Map<String, Integer> mix, int totalWeight, Random random) {
+        var target = random.nextInt(Math.max(1, totalWeight));
+        for (var entry : mix.entrySet()) {
+            target -= entry.getValue();
+            if (target < 0)
+                return entry.getKey();
+        }
+        return "reader";
+    }
+
+    /**
+     * The roles of a user cleared as {@code kind} for the label with the given role id prefix. Admins of labels that
+     * have no admin role are plain users.
+     */
+    private static List<String> rolesFor(String prefix, String kind, Set<String> existingRoles) {
+        switch (kind) {
+            case "admin":
+                return existingRoles.contains(prefix + "Admin")
+                        ? List.of(prefix + "User", prefix + "Admin")
+                        : List.of(prefix + "User");
+            case "user":
+                return List.of(prefix + "User");
+            default:
+                return List.of(prefix + "Reader");
+        }
+    }
+
+    private static String roleIdPrefixOf(String labelName) {
+        return labelName.replaceFirst("^.", labelName.substring(0, 1).toLowerCase());
+    }
+}
@@ -1,14 +1,27 @@
 package com.mayankrastogi.cs587.documentmanager.entities;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentChangedEvent;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
+import org.springframework.data.domain.DomainEvents;
 
 import javax.persistence.*;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 @Data
 @Entity
+@Table(indexes = {
+        @Index(name = "ix_document_name", columnList = "name"),
+        @Index(name = "ix_document_label_id", columnList = "label_id"),
+        @Index(name = "ix_document_content_hash", columnList = "content_hash")
+})
+@DynamicUpdate
 @NoArgsConstructor
-public class Document {
+public class Document implements Labeled {
 
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -17,12 +30,40 @@ public class Document {
     private String name;
     @ManyToOne(optional = false)
     private Label label;
-    @Lob
+
+    /**
+     * SHA-256 of the contents, which live in the content store rather than in this row.
+     */
+    @Column(length = 64)
+    private String contentHash;
+    private long size;
+    private Instant lastModified;
+
+    @Version
+    private long version;
+
+    /**
+     * Contents sent along with a JSON request body. Never persisted or serialized.
+     */
+    @Transient
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String contents;
 
-    public Document(String name, Label label, String contents) {
+    public Document(String name, Label label, String contentHash, long size) {
         this.name = name;
         this.label = label;
-        this.contents = contents;
+        this.contentHash = contentHash;
+        this.size = size;
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void updateLastModified() {
+        lastModified = Instant.now();
+    }
+
+    @DomainEvents
+    Collection<Object> domainEvents() {
+        return List.of(new DocumentChangedEvent(id));
     }
 }
@@ -0,0 +1,83 @@
+package com.mayankrastogi.cs587.documentmanager.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * A past or current version of the contents of a {@link Document}, numbered by the document version it was saved
+ * with.
+ * <p>
+ * A snapshot revision keeps its full contents in the content store under {@link #contentHash}. Any other revision is
+ * stored as a delta against its base revision, in the content store under {@link #deltaHash}; its full contents are
+ * only kept while it is the document's current version, and reclaimed some time after it is superseded.
+ * <p>
+ * Reading a revision needs clearance for {@link #labelId} as well as for the document as it is now, so that
+ * downgrading a document does not declassify its history.
+ */
+@Data
+@Entity
+@Table(indexes = {
+        @Index(name = "ux_document_revision", columnList = "document_id, version", unique = true),
+        @Index(name = "ix_document_revision_content_hash", columnList = "content_hash"),
+        @Index(name = "ix_document_revision_delta_hash", columnList = "delta_hash")
+})
+@NoArgsConstructor
+public class DocumentRevision {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @JsonIgnore
+    private long id;
+
+    private long documentId;
+    private long version;
+    /**
+     * Id of the highest label the document had while these were its contents.
+     */
+    @JsonIgnore
+    private long labelId;
+
+    /**
+     * Version of the revision the delta applies to, or {@code null} for a snapshot.
+     */
+    private Long baseVersion;
+    /**
+     * Number of deltas to apply to the nearest snapshot to reconstruct this revision.
+     */
+    private int chainLength;
+
+    @Column(length = 64)
+    private String contentHash;
+    private long size;
+
+    @JsonIgnore
+    @Column(length = 64)
+    private String deltaHash;
+    /**
+     * Bytes this revision adds to the store: the delta for a delta revision, the full contents for a snapshot.
+     */
+    private long storedSize;
+
+    private String author;
+    private Instant created;
+
+    /**
+     * Whether the full contents of this delta revision may have been deleted from the content store.
+     */
+    @JsonIgnore
+    private boolean contentsReleased;
+
+    public boolean isSnapshot() {
+        return baseVersion == null;
+    }
+
+    @PrePersist
+    private void stampCreated() {
+        if (created == null)
+            created = Instant.now();
+    }
+}
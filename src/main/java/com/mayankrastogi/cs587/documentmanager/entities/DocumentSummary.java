@@ -0,0 +1,18 @@
+package com.mayankrastogi.cs587.documentmanager.entities;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Metadata of a {@link Document} without its contents.
+ */
+@Value
+public class DocumentSummary implements Labeled {
+    long id;
+    String name;
+    Label label;
+    long size;
+    Instant lastModified;
+    long version;
+}
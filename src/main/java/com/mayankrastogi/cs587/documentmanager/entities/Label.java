@@ -1,15 +1,24 @@
 package com.mayankrastogi.cs587.documentmanager.entities;
 
+import com.mayankrastogi.cs587.documentmanager.events.LabelChangedEvent;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.springframework.data.domain.DomainEvents;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import java.util.Collection;
+import java.util.List;
 
 @Data
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 public class Label {
 
@@ -19,7 +28,22 @@ public class Label {
 
     private String name;
 
+    /**
+     * Position of the label in the classification order, lowest first.
+     */
+    private int rank;
+
     public Label(String name) {
         this.name = name;
     }
+
+    public Label(String name, int rank) {
+        this.name = name;
+        this.rank = rank;
+    }
+
+    @DomainEvents
+    Collection<Object> domainEvents() {
+        return List.of(new LabelChangedEvent(id));
+    }
 }
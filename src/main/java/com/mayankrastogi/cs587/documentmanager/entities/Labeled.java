@@ -0,0 +1,11 @@
+package com.mayankrastogi.cs587.documentmanager.entities;
+
+/**
+ * Anything carrying a classification label, so that clearance checks can be made on a full {@link Document} as well
+ * as on a {@link DocumentSummary}.
+ */
+public interface Labeled {
+    long getId();
+
+    Label getLabel();
+}
@@ -1,13 +1,22 @@
 package com.mayankrastogi.cs587.documentmanager.entities;
 
+import com.mayankrastogi.cs587.documentmanager.events.PermissionChangedEvent;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.springframework.data.domain.DomainEvents;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import java.util.Collection;
+import java.util.List;
 
 @Data
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 public class Permission {
     @Id
@@ -16,4 +25,9 @@ public class Permission {
     public Permission(String id) {
         this.id = id;
     }
+
+    @DomainEvents
+    Collection<Object> domainEvents() {
+        return List.of(new PermissionChangedEvent(id));
+    }
 }
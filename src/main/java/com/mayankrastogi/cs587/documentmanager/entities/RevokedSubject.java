@@ -0,0 +1,32 @@
+package com.mayankrastogi.cs587.documentmanager.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * A subject that no longer names a user, because the user was deleted or changed their email, and whose tokens must be
+ * rejected until they expire. Revocations of existing users are kept in {@link User#getTokenGeneration} instead.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedSubject {
+
+    /**
+     * The email the revoked tokens were issued to.
+     */
+    @Id
+    private String subject;
+
+    private long tokenGeneration;
+
+    /**
+     * Milliseconds since the epoch. Tokens issued to the subject before then are rejected.
+     */
+    private long notBefore;
+}
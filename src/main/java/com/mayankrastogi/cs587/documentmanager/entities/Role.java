@@ -1,27 +1,59 @@
 package com.mayankrastogi.cs587.documentmanager.entities;
 
+import com.mayankrastogi.cs587.documentmanager.events.RoleChangedEvent;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.springframework.data.domain.DomainEvents;
 
-import javax.persistence.Entity;
-import javax.persistence.FetchType;
-import javax.persistence.Id;
-import javax.persistence.ManyToMany;
+import javax.persistence.*;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 @Data
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 public class Role {
     @Id
     private String id;
 
     @ManyToMany(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SELECT)
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Permission> permissions;
 
+    /**
+     * Roles whose permissions this role inherits, transitively.
+     */
+    @ManyToMany
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<Role> parents;
+
     public Role(String id, Permission... permissions) {
+        this(id, List.of(), permissions);
+    }
+
+    public Role(String id, List<Role> parents, Permission... permissions) {
         this.id = id;
+        this.parents = parents;
         this.permissions = Arrays.asList(permissions);
     }
+
+    @DomainEvents
+    Collection<Object> domainEvents() {
+        return List.of(new RoleChangedEvent(id));
+    }
 }
@@ -1,16 +1,24 @@
 package com.mayankrastogi.cs587.documentmanager.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 @Data
 @Entity
+@Table(indexes = @Index(name = "ux_user_email", columnList = "email", unique = true))
 @NoArgsConstructor
 public class User {
 
@@ -23,7 +31,15 @@ public class User {
     private String email;
     private String password;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    /**
+     * Put in every token issued to the user. Tokens of older generations are rejected, so bumping it revokes them all.
+     */
+    @JsonIgnore
+    private long tokenGeneration;
+
+    @ManyToMany
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Role> roles;
 
     public User(String firstName, String lastName, String email, String password, Role... roles) {
@@ -45,10 +61,22 @@ public class User {
         return getFirstName() + " " + getLastName();
     }
 
+    /**
+     * Effective permissions of the user: those granted by the user's roles and by every role they inherit from, the
+     * same set {@code RolePermissionClosure} hands out at login.
+     */
     public Set<Permission> getPermissions() {
-        return roles
-                .stream()
-                .flatMap(r -> r.getPermissions().stream())
-                .collect(Collectors.toUnmodifiableSet());
+        var permissions = new HashSet<Permission>();
+        var visited = new HashSet<String>();
+        var pending = new ArrayDeque<Role>(roles);
+        while (!pending.isEmpty()) {
+            var role = pending.pop();
+            if (!visited.add(role.getId()))
+                continue;
+            permissions.addAll(role.getPermissions());
+            if (role.getParents() != null)
+                pending.addAll(role.getParents());
+        }
+        return Collections.unmodifiableSet(permissions);
     }
 }
@@ -0,0 +1,11 @@
+package com.mayankrastogi.cs587.documentmanager.events;
+
+import lombok.Value;
+
+/**
+ * Published whenever a {@link com.mayankrastogi.cs587.documentmanager.entities.Document} is saved.
+ */
+@Value
+public class DocumentChangedEvent {
+    long documentId;
+}
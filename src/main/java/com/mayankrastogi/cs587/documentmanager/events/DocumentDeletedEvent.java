@@ -0,0 +1,15 @@
+package com.mayankrastogi.cs587.documentmanager.events;
+
+import lombok.Value;
+
+/**
+ * Published whenever a {@link com.mayankrastogi.cs587.documentmanager.entities.Document} is deleted.
+ */
+@Value
+public class DocumentDeletedEvent {
+    long documentId;
+    /**
+     * The hash of the contents the document had, whose blob may no longer be needed.
+     */
+    String contentHash;
+}
@@ -0,0 +1,11 @@
+package com.mayankrastogi.cs587.documentmanager.events;
+
+import lombok.Value;
+
+/**
+ * Published whenever a {@link com.mayankrastogi.cs587.documentmanager.entities.Permission} is saved.
+ */
+@Value
+public class PermissionChangedEvent {
+    String permissionId;
+}
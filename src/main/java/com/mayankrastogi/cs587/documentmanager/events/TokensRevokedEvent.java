@@ -0,0 +1,20 @@
+package com.mayankrastogi.cs587.documentmanager.events;
+
+import lombok.Value;
+
+/**
+ * Published when tokens issued to a user must no longer be accepted: those of an older token generation, and those
+ * issued before {@code notBefore}.
+ */
+@Value
+public class TokensRevokedEvent {
+    /**
+     * The subject of the revoked tokens, i.e. the user's email.
+     */
+    String subject;
+    long generation;
+    /**
+     * Milliseconds since the epoch, or 0 to revoke by generation only.
+     */
+    long notBefore;
+}
@@ -1,8 +1,69 @@
 package com.mayankrastogi.cs587.documentmanager.repositories;
 
 import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface DocumentRepository extends CrudRepository<Document, Long> {
+
+    String SELECT_SUMMARY = "select new com.mayankrastogi.cs587.documentmanager.entities.DocumentSummary(" +
+            "d.id, d.name, l, d.size, d.lastModified, d.version) from Document d join d.label l ";
+
     Document findByName(String name);
+
+    List<Document> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable pageable);
+
+    @Query(SELECT_SUMMARY + "where d.id = :id")
+    Optional<DocumentSummary> findSummaryById(@Param("id") long id);
+
+    /**
+     * Keyset page of summaries of documents whose label is one of {@code labelNames}, starting right after the
+     * document with id {@code afterId}. Only the page size of the {@link Pageable} is used; the page number should
+     * always be 0.
+     */
+    @Query(SELECT_SUMMARY + "where l.name in :labelNames and d.id > :afterId order by d.id")
+    List<DocumentSummary> findSummariesByLabelNameIn(@Param("labelNames") Collection<String> labelNames,
+                                                     @Param("afterId") long afterId,
+                                                     Pageable pageable);
+
+    /**
+     * All documents whose label is one of {@code labelNames}, ordered by id and read through a cursor. The stream has
+     * to be consumed and closed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "100"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"),
+            @QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "false")
+    })
+    @Query("select d from Document d join fetch d.label l where l.name in :labelNames order by d.id")
+    Stream<Document> streamByLabelNameIn(@Param("labelNames") Collection<String> labelNames);
+
+    @Query("select d.id from Document d where d.name = :name")
+    Optional<Long> findIdByName(@Param("name") String name);
+
+    boolean existsByContentHash(String contentHash);
+
+    @Query("select d.contentHash from Document d where d.id = :id")
+    Optional<String> findContentHashById(@Param("id") long id);
+
+    /**
+     * Deletes a document without loading it first, unlike {@link #deleteById(Object)}.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Document d where d.id = :id")
+    void deleteDirectlyById(@Param("id") long id);
 }
@@ -0,0 +1,56 @@
+package com.mayankrastogi.cs587.documentmanager.repositories;
+
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentRevision;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface DocumentRevisionRepository extends CrudRepository<DocumentRevision, Long> {
+
+    /**
+     * Keyset page of the revisions of a document older than {@code beforeVersion}, newest first.
+     */
+    List<DocumentRevision> findByDocumentIdAndVersionLessThanOrderByVersionDesc(long documentId, long beforeVersion,
+                                                                               Pageable pageable);
+
+    Optional<DocumentRevision> findByDocumentIdAndVersion(long documentId, long version);
+
+    Optional<DocumentRevision> findFirstByDocumentIdOrderByVersionDesc(long documentId);
+
+    Optional<DocumentRevision> findFirstByDocumentIdAndVersionLessThanOrderByVersionDesc(long documentId, long version);
+
+    boolean existsByDocumentId(long documentId);
+
+    boolean existsByContentHashAndBaseVersionIsNull(String contentHash);
+
+    List<DocumentRevision> findByDocumentId(long documentId);
+
+    /**
+     * Number of revisions that need the blob with the given hash: as their delta, as the contents of a snapshot, or as
+     * full contents that have not been released yet.
+     */
+    @Query("select count(r) from DocumentRevision r where r.deltaHash = :hash or (r.contentHash = :hash " +
+            "and (r.baseVersion is null or r.contentsReleased = false))")
+    long countReferencesTo(@Param("hash") String hash);
+
+    /**
+     * Delta revisions created before {@code cutoff} that are no longer the latest revision of their document, and
+     * whose full contents have not been released yet.
+     */
+    @Query("select r from DocumentRevision r where r.baseVersion is not null and r.contentsReleased = false " +
+            "and r.created < :cutoff and r.version < " +
+            "(select max(o.version) from DocumentRevision o where o.documentId = r.documentId)")
+    List<DocumentRevision> findReleasable(@Param("cutoff") Instant cutoff, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from DocumentRevision r where r.documentId = :documentId")
+    void deleteByDocumentId(@Param("documentId") long documentId);
+}
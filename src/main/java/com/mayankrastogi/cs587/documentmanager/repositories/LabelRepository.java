@@ -1,17 +1,19 @@
 package com.mayankrastogi.cs587.documentmanager.repositories;
 
 import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
-import java.util.Optional;
 
 public interface LabelRepository extends CrudRepository<Label, Long> {
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Label findByIdOrName(long id, String name);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Label findByName(String name);
 
-    List<Label> findAllByIdLessThanEqual(long id);
-
-    Optional<Label> findFirstByIdLessThanAndIdGreaterThan(long max, long min);
-}
\ No newline at end of file
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Label> findAllByOrderByRankAscIdAsc();
+}
@@ -1,10 +1,13 @@
 package com.mayankrastogi.cs587.documentmanager.repositories;
 
 import com.mayankrastogi.cs587.documentmanager.entities.Permission;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 public interface PermissionRepository extends CrudRepository<Permission, String> {
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<Permission> findAllByIdIn(List<String> permissionIDs);
 }
@@ -0,0 +1,23 @@
+package com.mayankrastogi.cs587.documentmanager.repositories;
+
+import com.mayankrastogi.cs587.documentmanager.entities.RevokedSubject;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface RevokedSubjectRepository extends CrudRepository<RevokedSubject, String> {
+
+    List<RevokedSubject> findByNotBeforeGreaterThan(long cutoff);
+
+    /**
+     * Deletes the subjects revoked at or before {@code cutoff}, whose tokens have all expired since.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from RevokedSubject s where s.notBefore <= :cutoff")
+    void deleteByNotBeforeLessThanEqual(@Param("cutoff") long cutoff);
+}
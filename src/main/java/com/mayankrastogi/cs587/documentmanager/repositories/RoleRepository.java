@@ -1,7 +1,35 @@
 package com.mayankrastogi.cs587.documentmanager.repositories;
 
 import com.mayankrastogi.cs587.documentmanager.entities.Role;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface RoleRepository extends CrudRepository<Role, String> {
+
+    @Query("select r.id from Role r")
+    List<String> findAllIds();
+
+    @Query("select r.id as roleId, p.id as targetId from Role r join r.permissions p")
+    List<Edge> findAllPermissionEdges();
+
+    @Query("select r.id as roleId, p.id as targetId from Role r join r.parents p")
+    List<Edge> findAllParentEdges();
+
+    @Query("select r.id as roleId, p.id as targetId from Role r join r.permissions p where r.id = :id")
+    List<Edge> findPermissionEdgesByRoleId(@Param("id") String id);
+
+    @Query("select r.id as roleId, p.id as targetId from Role r join r.parents p where r.id = :id")
+    List<Edge> findParentEdgesByRoleId(@Param("id") String id);
+
+    /**
+     * A permission granted to a role, or a parent of a role, by id.
+     */
+    interface Edge {
+        String getRoleId();
+
+        String getTargetId();
+    }
 }
@@ -1,8 +1,51 @@
 package com.mayankrastogi.cs587.documentmanager.repositories;
 
 import com.mayankrastogi.cs587.documentmanager.entities.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface UserRepository extends CrudRepository<User, Long> {
+
+    @EntityGraph(attributePaths = "roles")
     User findByEmail(String email);
+
+    @Override
+    @EntityGraph(attributePaths = "roles")
+    Iterable<User> findAll();
+
+    /**
+     * Keyset page of users starting right after the user with id {@code afterId}. Roles are not joined here, since
+     * that would make Hibernate page in memory; they are batch-fetched for the whole page instead.
+     */
+    List<User> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable pageable);
+
+    @Query("select u.email as email, u.tokenGeneration as tokenGeneration from User u where u.tokenGeneration > 0")
+    List<TokenGeneration> findTokenGenerations();
+
+    @Query("select distinct u.email as email, u.tokenGeneration as tokenGeneration from User u join u.roles r " +
+            "where r.id in :roleIds")
+    List<TokenGeneration> findTokenGenerationsByRoleIds(@Param("roleIds") Collection<String> roleIds);
+
+    /**
+     * Bumps the token generation of every user holding one of the roles, revoking all tokens issued to them.
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.tokenGeneration = u.tokenGeneration + 1 where u.id in " +
+            "(select h.id from User h join h.roles r where r.id in :roleIds)")
+    int incrementTokenGenerationsByRoleIds(@Param("roleIds") Collection<String> roleIds);
+
+    interface TokenGeneration {
+        String getEmail();
+
+        long getTokenGeneration();
+    }
 }
@@ -0,0 +1,532 @@
+package com.mayankrastogi.cs587.documentmanager.search;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentDeletedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
+import com.mayankrastogi.cs587.documentmanager.services.LabelLattice;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory inverted index over the contents of all documents, ranked with BM25.
+ * <p>
+ * Postings are kept in a separate shard per label id, so a search only ever touches the shards of the labels the user
+ * can read: results, as well as the document counts and frequencies used for ranking, are clearance-filtered without
+ * loading any document. Renaming a label leaves its shard where it is.
+ * <p>
+ * The index is built in the background at startup, into a fresh copy that replaces the live one once it is complete,
+ * and then kept up to date from document change events. Contents are read and tokenized outside the lock, and only
+ * when their hash changed; a change to the name or label alone just updates the document's entry or moves its
+ * postings. Updates to the live index are serialized; searches run concurrently with them without locking.
+ * <p>
+ * If {@code search.index.snapshot} names a file, the index is saved there on shutdown and the next build starts from
+ * it. The build then only checks every document's version, name, label and content hash against the snapshot, and
+ * reads the contents of those that changed.
+ */
+@Slf4j
+@Component
+public class DocumentIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TERM_LENGTH = 64;
+    /**
+     * How deep into the results a search can page. Deeper pages would need a heap of every hit above them.
+     */
+    public static final int MAX_OFFSET = 10_000;
+    private static final int BUILD_BATCH_SIZE = 500;
+    private static final int SNAPSHOT_MAGIC = 0x44494458;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private ContentStore contentStore;
+
+    @Autowired
+    private LabelLattice labelLattice;
+
+    @Value("${search.index.snapshot:}")
+    private String snapshot;
+
+    private volatile Index index = new Index();
+    /**
+     * The documents updated in the live index while a build is running, which the build must take from the live
+     * index rather than from what it read itself. Null when no build is running.
+     */
+    private Set<Long> changedDuringBuild;
+
+    /**
+     * The documents in the labels named {@code labels} matching any term of {@code query}, best first.
+     *
+     * @throws IllegalArgumentException if {@code offset} is negative or above {@link #MAX_OFFSET}, or {@code limit}
+     *                                  is not positive
+     */
+    public List<SearchHit> search(String query, Set<String> labels, int offset, int limit) {
+        if (offset < 0 || offset > MAX_OFFSET)
+            throw new IllegalArgumentException("Search results can only be paged up to offset " + MAX_OFFSET + ".");
+        if (limit < 1)
+            throw new IllegalArgumentException("Search limit must be at least 1.");
+
+        var index = this.index;
+        var terms = new HashSet<>(termFrequencies(query).keySet());
+        var readable = new ArrayList<Shard>();
+        long documentCount = 0;
+        long totalLength = 0;
+        for (var label : labels) {
+            var shard = labelLattice.byName(label).map(l -> index.shards.get(l.getId())).orElse(null);
+            if (shard != null) {
+                readable.add(shard);
+                documentCount += shard.documentCount;
+                totalLength += shard.totalLength;
+            }
+        }
+        if (terms.isEmpty() || documentCount == 0)
+            return List.of();
+
+        var averageLength = (double) totalLength / documentCount;
+        var scores = new HashMap<Long, Double>();
+        for (var term : terms) {
+            long frequency = 0;
+            for (var shard : readable)
+                frequency += shard.postings.getOrDefault(term, Map.of()).size();
+            if (frequency == 0)
+                continue;
+
+            var idf = Math.log(1 + (documentCount - frequency + 0.5) / (frequency + 0.5));
+            for (var shard : readable) {
+                shard.postings.getOrDefault(term, Map.of()).forEach((id, termFrequency) -> {
+                    var document = index.documents.get(id);
+                    if (document == null)
+                        return;
+                    var norm = K1 * (1 - B + B * document.length / averageLength);
+                    scores.merge(id, idf * termFrequency * (K1 + 1) / (termFrequency + norm), Double::sum);
+                });
+            }
+        }
+
+        var size = (int) Math.min((long) offset + limit, scores.size());
+        var best = new PriorityQueue<Map.Entry<Long, Double>>(size + 1, Map.Entry.comparingByValue());
+        for (var score : scores.entrySet()) {
+            best.add(score);
+            if (best.size() > size)
+                best.poll();
+        }
+
+        var hits = new ArrayList<SearchHit>(best.size());
+        while (!best.isEmpty()) {
+            var score = best.poll();
+            var document = index.documents.get(score.getKey());
+            if (document != null)
+                hits.add(new SearchHit(score.getKey(), document.name,
+                        labelLattice.byId(document.labelId).map(Label::getName).orElse(null), score.getValue()));
+        }
+        Collections.reverse(hits);
+        return hits.subList(Math.min(offset, hits.size()), hits.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        documentRepository.findById(event.getDocumentId()).ifPresent(this::indexQuietly);
+    }
+
+    @EventListener
+    public void onDocumentDeleted(DocumentDeletedEvent event) {
+        remove(event.getDocumentId());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        var builder = new Thread(this::rebuild, "document-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Indexes every document into a fresh index, without holding the lock, then replaces the live index with it.
+     * Documents updated in the live index meanwhile are carried over from there. The fresh index starts from the
+     * snapshot, if there is one, so that only documents changed since it was saved are read.
+     */
+    void rebuild() {
+        synchronized (this) {
+            if (changedDuringBuild != null)
+                return;
+            changedDuringBuild = new HashSet<>();
+        }
+
+        var fresh = loadSnapshot();
+        var read = 0;
+        var unseen = new HashSet<>(fresh.documents.keySet());
+        try {
+            long after = 0;
+            List<Document> page;
+            do {
+                page = documentRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, BUILD_BATCH_SIZE));
+                for (var document : page) {
+                    unseen.remove(document.getId());
+                    var entry = entryOf(document);
+                    var existing = fresh.documents.get(document.getId());
+                    try {
+                        if (existing != null && existing.contentHash.equals(entry.contentHash)) {
+                            if (!entry.sameAs(existing))
+                                fresh.update(existing, entry);
+                        } else {
+                            fresh.add(entry, tokenize(entry.contentHash));
+                            read++;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        fresh.remove(document.getId());
+                        log.warn("Could not index document " + document.getId() + ".", e);
+                    }
+                    after = document.getId();
+                }
+            } while (page.size() == BUILD_BATCH_SIZE);
+            unseen.forEach(fresh::remove);
+        } catch (RuntimeException e) {
+            log.warn("Could not build the document index.", e);
+            synchronized (this) {
+                changedDuringBuild = null;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            for (var id : changedDuringBuild)
+                fresh.copy(id, index);
+            changedDuringBuild = null;
+            index = fresh;
+        }
+        log.info("Indexed " + fresh.documents.size() + " documents, reading the contents of " + read + ".");
+    }
+
+    /**
+     * Saves the index to {@code search.index.snapshot}, unless it is still being built.
+     */
+    @PreDestroy
+    public synchronized void saveSnapshot() {
+        if (snapshot.isEmpty() || changedDuringBuild != null)
+            return;
+
+        var path = Paths.get(snapshot).toAbsolutePath();
+        try {
+            Files.createDirectories(path.getParent());
+            var temp = Files.createTempFile(path.getParent(), "index", ".tmp");
+            try {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    index.write(out);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            log.info("Saved " + index.documents.size() + " indexed documents to " + path);
+        } catch (IOException e) {
+            log.warn("Could not save the document index to " + path, e);
+        }
+    }
+
+    /**
+     * The index saved in {@code search.index.snapshot}, or an empty one if there is none or it cannot be read.
+     */
+    private Index loadSnapshot() {
+        var loaded = new Index();
+        if (snapshot.isEmpty() || !Files.exists(Paths.get(snapshot)))
+            return loaded;
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(snapshot))))) {
+            loaded.read(in);
+            return loaded;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load the document index from " + snapshot + ", rebuilding it.", e);
+            return new Index();
+        }
+    }
+
+    /**
+     * Adds the document to the index, or updates it if it is already indexed. Contents are only read and tokenized
+     * if their hash changed, and not under the lock.
+     */
+    public void index(Document document) throws IOException {
+        var entry = entryOf(document);
+        var existing = index.documents.get(document.getId());
+        if (entry.sameAs(existing))
+            return;
+
+        var frequencies = existing != null && existing.contentHash.equals(entry.contentHash)
+                ? null
+                : tokenize(entry.contentHash);
+        synchronized (this) {
+            existing = index.documents.get(document.getId());
+            // A later version may have been indexed while the contents were being read
+            if (existing != null && existing.version > entry.version)
+                return;
+            if (frequencies == null && (existing == null || !existing.contentHash.equals(entry.contentHash)))
+                frequencies = tokenize(entry.contentHash);
+
+            if (frequencies == null)
+                index.update(existing, entry);
+            else
+                index.add(entry, frequencies);
+            if (changedDuringBuild != null)
+                changedDuringBuild.add(entry.id);
+        }
+    }
+
+    public synchronized void remove(long id) {
+        index.remove(id);
+        if (changedDuringBuild != null)
+            changedDuringBuild.add(id);
+    }
+
+    private void indexQuietly(Document document) {
+        try {
+            index(document);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not index document " + document.getId() + ".", e);
+        }
+    }
+
+    private static IndexedDocument entryOf(Document document) {
+        return new IndexedDocument(document.getId(), document.getVersion(), document.getName(),
+                document.getLabel().getId(), document.getContentHash(), null, 0);
+    }
+
+    private Map<String, Integer> tokenize(String contentHash) throws IOException {
+        try (var reader = new BufferedReader(new InputStreamReader(
+                contentStore.load(contentHash).getInputStream(), StandardCharsets.UTF_8))) {
+            return termFrequencies(reader);
+        }
+    }
+
+    private static Map<String, Integer> termFrequencies(String text) {
+        try {
+            return termFrequencies(new StringReader(text));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Lower-cased runs of letters and digits in {@code text} and how often each occurs.
+     */
+    private static Map<String, Integer> termFrequencies(Reader text) throws IOException {
+        var frequencies = new HashMap<String, Integer>();
+        var term = new StringBuilder();
+        int c;
+        do {
+            c = text.read();
+            if (c != -1 && Character.isLetterOrDigit(c)) {
+                if (term.length() < MAX_TERM_LENGTH)
+                    term.append((char) Character.toLowerCase(c));
+            } else if (term.length() > 0) {
+                frequencies.merge(term.toString(), 1, Integer::sum);
+                term.setLength(0);
+            }
+        } while (c != -1);
+        return frequencies;
+    }
+
+    /**
+     * The shards and the documents in them. The live index is only changed under the lock of the
+     * {@link DocumentIndex}; one being built is only seen by the thread building it.
+     */
+    private static class Index {
+        final Map<Long, Shard> shards = new ConcurrentHashMap<>();
+        final Map<Long, IndexedDocument> documents = new ConcurrentHashMap<>();
+
+        /**
+         * Indexes {@code entry} with the given term frequencies, replacing whatever was indexed for it before.
+         */
+        void add(IndexedDocument entry, Map<String, Integer> frequencies) {
+            remove(entry.id);
+            var shard = shards.computeIfAbsent(entry.labelId, l -> new Shard());
+            var length = 0;
+            for (var frequency : frequencies.entrySet()) {
+                shard.postings.computeIfAbsent(frequency.getKey(), t -> new ConcurrentHashMap<>())
+                        .put(entry.id, frequency.getValue());
+                length += frequency.getValue();
+            }
+            shard.documentCount++;
+            shard.totalLength += length;
+            documents.put(entry.id, entry.withTerms(frequencies.keySet().toArray(new String[0]), length));
+        }
+
+        /**
+         * Updates the name, version and label of an indexed document whose contents did not change.
+         */
+        void update(IndexedDocument existing, IndexedDocument entry) {
+            if (existing.labelId != entry.labelId)
+                move(existing, entry.labelId);
+            documents.put(entry.id, entry.withTerms(existing.terms, existing.length));
+        }
+
+        void remove(long id) {
+            var document = documents.remove(id);
+            if (document == null)
+                return;
+
+            var shard = shards.get(document.labelId);
+            for (var term : document.terms) {
+                var postings = shard.postings.get(term);
+                if (postings != null) {
+                    postings.remove(id);
+                    if (postings.isEmpty())
+                        shard.postings.remove(term);
+                }
+            }
+            shard.documentCount--;
+            shard.totalLength -= document.length;
+        }
+
+        /**
+         * Replaces whatever this index has for document {@code id} with what {@code other} has.
+         */
+        void copy(long id, Index other) {
+            remove(id);
+            var document = other.documents.get(id);
+            if (document == null)
+                return;
+
+            var from = other.shards.get(document.labelId);
+            var frequencies = new HashMap<String, Integer>();
+            for (var term : document.terms) {
+                var frequency = from.postings.getOrDefault(term, Map.of()).get(id);
+                if (frequency != null)
+                    frequencies.put(term, frequency);
+            }
+            add(document, frequencies);
+        }
+
+        /**
+         * Writes every document with its term frequencies.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(documents.size());
+            for (var document : documents.values()) {
+                out.writeLong(document.id);
+                out.writeLong(document.version);
+                out.writeBoolean(document.name != null);
+                if (document.name != null)
+                    out.writeUTF(document.name);
+                out.writeLong(document.labelId);
+                out.writeUTF(document.contentHash);
+
+                var postings = shards.get(document.labelId).postings;
+                out.writeInt(document.terms.length);
+                for (var term : document.terms) {
+                    out.writeUTF(term);
+                    out.writeInt(postings.getOrDefault(term, Map.of()).getOrDefault(document.id, 0));
+                }
+            }
+        }
+
+        /**
+         * Adds the documents written by {@link #write}.
+         */
+        void read(DataInputStream in) throws IOException {
+            if (in.readInt() != SNAPSHOT_MAGIC)
+                throw new IOException("Not a document index snapshot.");
+            var count = in.readInt();
+            for (var i = 0; i < count; i++) {
+                var id = in.readLong();
+                var version = in.readLong();
+                var name = in.readBoolean() ? in.readUTF() : null;
+                var labelId = in.readLong();
+                var contentHash = in.readUTF();
+
+                var terms = in.readInt();
+                var frequencies = new HashMap<String, Integer>(terms * 4 / 3 + 1);
+                for (var j = 0; j < terms; j++)
+                    frequencies.put(in.readUTF(), in.readInt());
+                add(new IndexedDocument(id, version, name, labelId, contentHash, null, 0), frequencies);
+            }
+        }
+
+        private void move(IndexedDocument document, long labelId) {
+            var from = shards.get(document.labelId);
+            var to = shards.computeIfAbsent(labelId, l -> new Shard());
+            for (var term : document.terms) {
+                var postings = from.postings.get(term);
+                var frequency = postings == null ? null : postings.remove(document.id);
+                if (frequency != null)
+                    to.postings.computeIfAbsent(term, t -> new ConcurrentHashMap<>()).put(document.id, frequency);
+                if (postings != null && postings.isEmpty())
+                    from.postings.remove(term);
+            }
+            from.documentCount--;
+            from.totalLength -= document.length;
+            to.documentCount++;
+            to.totalLength += document.length;
+        }
+    }
+
+    /**
+     * Postings of the documents under one label: for every term, the documents containing it and how often.
+     */
+    private static class Shard {
+        final Map<String, Map<Long, Integer>> postings = new ConcurrentHashMap<>();
+        volatile long documentCount;
+        volatile long totalLength;
+    }
+
+    private static class IndexedDocument {
+        final long id;
+        final long version;
+        final String name;
+        final long labelId;
+        final String contentHash;
+        final String[] terms;
+        final int length;
+
+        IndexedDocument(long id, long version, String name, long labelId, String contentHash, String[] terms,
+                        int length) {
+            this.id = id;
+            this.version = version;
+            this.name = name;
+            this.labelId = labelId;
+            this.contentHash = contentHash;
+            this.terms = terms;
+            this.length = length;
+        }
+
+        IndexedDocument withTerms(String[] terms, int length) {
+            return new IndexedDocument(id, version, name, labelId, contentHash, terms, length);
+        }
+
+        /**
+         * Whether {@code other} has the same version and everything that is indexed, so that indexing would change
+         * nothing.
+         */
+        boolean sameAs(IndexedDocument other) {
+            return other != null && other.version == version && other.labelId == labelId
+                    && Objects.equals(other.name, name) && other.contentHash.equals(contentHash);
+        }
+    }
+}
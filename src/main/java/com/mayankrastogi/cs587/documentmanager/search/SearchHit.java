@@ -0,0 +1,11 @@
+package com.mayankrastogi.cs587.documentmanager.search;
+
+import lombok.Value;
+
+@Value
+public class SearchHit {
+    long id;
+    String name;
+    String label;
+    double score;
+}
@@ -0,0 +1,127 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-subject rate limits for each {@link EndpointClass}, enforced with the generic cell rate algorithm.
+ * <p>
+ * A subject's bucket is a single theoretical arrival time, the instant at which its allowance would be full again if
+ * it stopped sending requests. Admitting a request pushes it one emission interval ({@code 1 / rate}) into the future
+ * with a compare-and-set, and a request that would push it more than {@code burst} intervals ahead of now is refused.
+ * No locks are taken, and an admitted request allocates nothing once its subject has a bucket.
+ * <p>
+ * Buckets that have refilled completely are indistinguishable from missing ones, so they are swept every
+ * {@code security.admission.sweep-interval}. Refused requests are counted by {@code security.admission.rejected},
+ * tagged with the endpoint class.
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    private final boolean enabled;
+    private final long[] emissionIntervals;
+    private final long[] tolerances;
+    private final ConcurrentHashMap<String, AtomicLong>[] buckets;
+    private final Counter[] rejectedCounters;
+
+    @SuppressWarnings("unchecked")
+    public AdmissionControl(@Value("${security.admission.enabled:true}") boolean enabled,
+                            Environment environment,
+                            MeterRegistry meterRegistry) {
+        var classes = EndpointClass.values();
+        this.enabled = enabled;
+        this.emissionIntervals = new long[classes.length];
+        this.tolerances = new long[classes.length];
+        this.buckets = new ConcurrentHashMap[classes.length];
+        this.rejectedCounters = new Counter[classes.length];
+
+        for (var endpointClass : classes) {
+            var prefix = "security.admission." + endpointClass.getKey();
+            var rate = environment.getProperty(prefix + ".rate", Double.class, endpointClass.getDefaultRate());
+            var burst = environment.getProperty(prefix + ".burst", Integer.class, endpointClass.getDefaultBurst());
+            if (rate <= 0 || burst < 1)
+                throw new IllegalArgumentException(prefix + " needs a positive rate and a burst of at least 1.");
+
+            var i = endpointClass.ordinal();
+            emissionIntervals[i] = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            tolerances[i] = emissionIntervals[i] * burst;
+            buckets[i] = new ConcurrentHashMap<>();
+            rejectedCounters[i] = Counter
+                    .builder("security.admission.rejected")
+                    .description("Requests refused because their subject exceeded the rate limit of the endpoint class")
+                    .tag("class", endpointClass.getKey())
+                    .register(meterRegistry);
+            Gauge.builder("security.admission.subjects", buckets[i], ConcurrentHashMap::size)
+                    .description("Subjects with a partly used allowance")
+                    .tag("class", endpointClass.getKey())
+                    .register(meterRegistry);
+
+            if (enabled)
+                log.info("Admitting " + rate + " " + endpointClass.getKey() + " requests per second per subject, in bursts of up to " + burst + ".");
+        }
+    }
+
+    /**
+     * Admits a request by {@code subject} to an endpoint of the given class.
+     *
+     * @return 0 if the request is admitted, otherwise the nanoseconds until it would be
+     */
+    public long admit(String subject, EndpointClass endpointClass) {
+        return enabled ? admit(subject, endpointClass, System.nanoTime()) : 0;
+    }
+
+    long admit(String subject, EndpointClass endpointClass, long now) {
+        var i = endpointClass.ordinal();
+        var interval = emissionIntervals[i];
+        var tolerance = tolerances[i];
+        var bucket = bucketOf(subject, i, now);
+
+        while (true) {
+            var arrival = bucket.get();
+            // nanoTime may overflow, so instants are only ever compared through their difference
+            var next = (arrival - now > 0 ? arrival : now) + interval;
+            var wait = next - now - tolerance;
+            if (wait > 0) {
+                rejectedCounters[i].increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, next))
+                return 0;
+        }
+    }
+
+    private AtomicLong bucketOf(String subject, int endpointClass, long now) {
+        var map = buckets[endpointClass];
+        var bucket = map.get(subject);
+        if (bucket == null) {
+            var created = new AtomicLong(now);
+            bucket = map.putIfAbsent(subject, created);
+            if (bucket == null)
+                bucket = created;
+        }
+        return bucket;
+    }
+
+    /**
+     * Drops the buckets whose allowance is full again. A request racing with the removal may be admitted without its
+     * arrival being recorded, which at worst lets one extra request through.
+     */
+    @Scheduled(initialDelayString = "${security.admission.sweep-interval:PT1M}",
+            fixedDelayString = "${security.admission.sweep-interval:PT1M}")
+    public void sweep() {
+        var now = System.nanoTime();
+        for (var map : buckets)
+            map.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refuses requests with {@code 429 Too Many Requests} once their subject exceeds its {@link AdmissionControl} limit.
+ * Runs after {@link JwtTokenAuthenticationFilter}, so authenticated requests are limited by user and the rest by their
+ * remote address. Login attempts never get this far, and are limited by {@link LoginAdmissionControlFilter} instead.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    protected final AdmissionControl admissionControl;
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        var wait = admit(request);
+
+        if (wait > 0) {
+            var retryAfter = (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(String.format("{\"message\": \"Too many requests, retry after %d s\"}", retryAfter));
+            return;
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * @return 0 if the request is admitted, otherwise the nanoseconds until it would be
+     */
+    protected long admit(HttpServletRequest request) {
+        var auth = SecurityContextHolder.getContext().getAuthentication();
+        var subject = auth != null ? auth.getName() : request.getRemoteAddr();
+        return admissionControl.admit(subject, EndpointClass.of(request));
+    }
+}
@@ -0,0 +1,106 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The document permissions of an authenticated user, compiled once from the authorities in their token into a bitmap
+ * indexed by (label ordinal &times; operation).
+ * <p>
+ * Label ordinals are handed out the first time a label name is seen in any token and never change, so a compiled
+ * context stays valid for as long as its token does. Permission checks do a single map lookup and a bit test, without
+ * allocating.
+ */
+public final class AuthorizationContext {
+
+    public static final AuthorizationContext EMPTY = new AuthorizationContext(new long[0], Set.of());
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Map<String, Integer> LABEL_ORDINALS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_LABEL_ORDINAL = new AtomicInteger();
+
+    private final long[] capabilities;
+    private final Set<String> readableLabels;
+
+    private AuthorizationContext(long[] capabilities, Set<String> readableLabels) {
+        this.capabilities = capabilities;
+        this.readableLabels = readableLabels;
+    }
+
+    public static AuthorizationContext compile(Collection<? extends GrantedAuthority> authorities) {
+        var capabilities = new long[1];
+        var readableLabels = new HashSet<String>();
+
+        for (var authority : authorities) {
+            var permission = authority.getAuthority();
+            for (var operation : OPERATIONS) {
+                var prefix = operation.getPrefix();
+                if (permission.length() > prefix.length() && permission.startsWith(prefix)) {
+                    var labelName = permission.substring(prefix.length());
+                    var bit = bitOf(ordinalOf(labelName), operation);
+                    if (bit >>> 6 >= capabilities.length)
+                        capabilities = Arrays.copyOf(capabilities, (bit >>> 6) + 1);
+                    capabilities[bit >>> 6] |= 1L << bit;
+                    if (operation == Operation.READ)
+                        readableLabels.add(labelName);
+                    break;
+                }
+            }
+        }
+        return new AuthorizationContext(capabilities, Set.copyOf(readableLabels));
+    }
+
+    /**
+     * The context of the user making the current request: the one compiled by {@link JwtTokenAuthenticationFilter}, or
+     * one compiled on the spot for any other kind of authentication.
+     */
+    public static AuthorizationContext current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null)
+            return EMPTY;
+        if (authentication.getDetails() instanceof AuthorizationContext)
+            return (AuthorizationContext) authentication.getDetails();
+        return compile(authentication.getAuthorities());
+    }
+
+    public boolean isAllowed(Operation operation, Label label) {
+        return isAllowed(operation, label.getName());
+    }
+
+    public boolean isAllowed(Operation operation, String labelName) {
+        if (labelName == null)
+            return false;
+        var ordinal = LABEL_ORDINALS.get(labelName);
+        if (ordinal == null)
+            return false;
+
+        var bit = bitOf(ordinal, operation);
+        var word = bit >>> 6;
+        return word < capabilities.length && (capabilities[word] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Names of all labels the user can read.
+     */
+    public Set<String> getReadableLabels() {
+        return readableLabels;
+    }
+
+    private static int ordinalOf(String labelName) {
+        return LABEL_ORDINALS.computeIfAbsent(labelName, name -> NEXT_LABEL_ORDINAL.getAndIncrement());
+    }
+
+    private static int bitOf(int labelOrdinal, Operation operation) {
+        return labelOrdinal * OPERATIONS.length + operation.ordinal();
+    }
+}
@@ -1,20 +1,18 @@
 package com.mayankrastogi.cs587.documentmanager.security;
 
-import com.mayankrastogi.cs587.documentmanager.entities.Permission;
 import com.mayankrastogi.cs587.documentmanager.entities.Role;
 import com.mayankrastogi.cs587.documentmanager.entities.User;
 import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service("userDetailsService")
 @Transactional
@@ -23,6 +21,9 @@ public class DocumentManagerUserDetailsService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RolePermissionClosure rolePermissionClosure;
+
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
 
@@ -33,11 +34,6 @@ public class DocumentManagerUserDetailsService implements UserDetailsService {
     }
 
     private List<? extends GrantedAuthority> getAuthorities(User user) {
-        List<GrantedAuthority> authorities = new ArrayList<>();
-
-        user.getRoles().stream().map(Role::getId).map(SimpleGrantedAuthority::new).forEach(authorities::add);
-        user.getPermissions().stream().map(Permission::getId).map(SimpleGrantedAuthority::new).forEach(authorities::add);
-
-        return authorities;
+        return rolePermissionClosure.authoritiesOf(user.getRoles().stream().map(Role::getId).collect(Collectors.toList()));
     }
 }
@@ -0,0 +1,44 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import lombok.Getter;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Classes of endpoints that {@link AdmissionControl} limits separately, so that a client flooding one of them does not
+ * use up its allowance for the others. Each class is configured with {@code security.admission.<key>.rate} (requests
+ * per second) and {@code security.admission.<key>.burst}.
+ * <p>
+ * {@link #LOGIN} is only applied to login attempts, which are limited by remote address before their password is
+ * checked, so {@link #of} never returns it.
+ */
+public enum EndpointClass {
+    READ("read", 50, 100),
+    WRITE("write", 10, 20),
+    EXPORT("export", 0.2, 2),
+    ADMIN("admin", 10, 20),
+    LOGIN("login", 1, 10);
+
+    @Getter
+    private final String key;
+    @Getter
+    private final double defaultRate;
+    @Getter
+    private final int defaultBurst;
+
+    EndpointClass(String key, double defaultRate, int defaultBurst) {
+        this.key = key;
+        this.defaultRate = defaultRate;
+        this.defaultBurst = defaultBurst;
+    }
+
+    public static EndpointClass of(HttpServletRequest request) {
+        var path = request.getServletPath();
+        if (path.startsWith("/users") || path.startsWith("/roles") || path.startsWith("/actuator"))
+            return ADMIN;
+        if (path.startsWith("/documents/export"))
+            return EXPORT;
+        var method = request.getMethod();
+        return method.equals("GET") || method.equals("HEAD") ? READ : WRITE;
+    }
+}
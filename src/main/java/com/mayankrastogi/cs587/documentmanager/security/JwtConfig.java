@@ -22,4 +22,11 @@ public class JwtConfig {
 
     @Value("${security.jwt.secret:JwtSecretKey}")
     private String secret;
+
+    /**
+     * Whether to issue tokens with permissions encoded as a bitset against the {@link PermissionCatalog} instead of a
+     * list of names. Tokens in either format are always accepted.
+     */
+    @Value("${security.jwt.compact-authorities:false}")
+    private boolean compactAuthorities;
 }
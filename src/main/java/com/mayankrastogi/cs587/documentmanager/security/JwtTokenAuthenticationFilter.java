@@ -1,8 +1,14 @@
 package com.mayankrastogi.cs587.documentmanager.security;
 
+import com.mayankrastogi.cs587.documentmanager.security.VerifiedTokenCache.VerifiedToken;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -13,14 +19,56 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class JwtTokenAuthenticationFilter extends OncePerRequestFilter {
 
+    /**
+     * Authority names. In compact tokens, only the authorities that are not in the permission catalog.
+     */
+    static final String AUTHORITIES_CLAIM = "authorities";
+    /**
+     * Bitset of permissions, present only in compact tokens.
+     */
+    static final String PERMISSIONS_CLAIM = "perms";
+    static final String CATALOG_VERSION_CLAIM = "pcv";
+    /**
+     * Token generation of the user when the token was issued, checked against {@link TokenRevocations}.
+     */
+    static final String GENERATION_CLAIM = "gen";
+
     private final JwtConfig jwtConfig;
+    private final VerifiedTokenCache tokenCache;
+    private final PermissionCatalog permissionCatalog;
+    private final TokenRevocations tokenRevocations;
+    private final byte[] signingKey;
+    private final Timer verifyTimer;
+    private final Counter rejectedCounter;
+    private final Counter revokedCounter;
 
-    public JwtTokenAuthenticationFilter(JwtConfig jwtConfig) {
+    public JwtTokenAuthenticationFilter(JwtConfig jwtConfig, VerifiedTokenCache tokenCache,
+                                        PermissionCatalog permissionCatalog, TokenRevocations tokenRevocations,
+                                        MeterRegistry meterRegistry) {
         this.jwtConfig = jwtConfig;
+        this.tokenCache = tokenCache;
+        this.permissionCatalog = permissionCatalog;
+        this.tokenRevocations = tokenRevocations;
+        this.signingKey = jwtConfig.getSecret().getBytes();
+        this.verifyTimer = Timer
+                .builder("security.jwt.verify")
+                .description("Time to parse a token and verify its signature, on verified-token cache misses")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter
+                .builder("security.jwt.rejected")
+                .description("Tokens that failed to parse or verify, or were revoked")
+                .tag("reason", "invalid")
+                .register(meterRegistry);
+        this.revokedCounter = Counter
+                .builder("security.jwt.rejected")
+                .description("Tokens that failed to parse or verify, or were revoked")
+                .tag("reason", "revoked")
+                .register(meterRegistry);
     }
 
     @Override
@@ -37,26 +85,60 @@ public class JwtTokenAuthenticationFilter extends OncePerRequestFilter {
         String token = header.replace(jwtConfig.getPrefix(), "");
 
         try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(jwtConfig.getSecret().getBytes())
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            String username = claims.getSubject();
-            if (username != null) {
-                @SuppressWarnings("unchecked")
-                List<String> authorities = (List<String>) claims.get("authorities");
-
-                UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
-                        username, null, authorities.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
-
-                SecurityContextHolder.getContext().setAuthentication(auth);
+            VerifiedToken verified = tokenCache.get(token, this::verify);
+            if (verified != null) {
+                Authentication auth = verified.getAuthentication();
+                if (tokenRevocations.isRevoked(auth.getName(), verified.getGeneration(), verified.getIssuedAt()))
+                    revokedCounter.increment();
+                else
+                    SecurityContextHolder.getContext().setAuthentication(auth);
             }
 
         } catch (Exception e) {
+            rejectedCounter.increment();
             SecurityContextHolder.clearContext();
         }
 
         chain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    VerifiedToken verify(String token) {
+        var start = System.nanoTime();
+        Claims claims;
+        try {
+            claims = Jwts.parser()
+                    .setSigningKey(signingKey)
+                    .parseClaimsJws(token)
+                    .getBody();
+        } finally {
+            verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        String username = claims.getSubject();
+        if (username == null)
+            return null;
+
+        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
+                username, null, authoritiesOf(claims));
+        auth.setDetails(AuthorizationContext.compile(auth.getAuthorities()));
+
+        var generation = claims.get(GENERATION_CLAIM, Number.class);
+        var issuedAt = claims.getIssuedAt() == null ? 0 : claims.getIssuedAt().getTime();
+        var expiresAt = claims.getExpiration() == null
+                ? System.currentTimeMillis() + jwtConfig.getExpiration() * 1000L
+                : claims.getExpiration().getTime();
+        return new VerifiedToken(auth, generation == null ? 0 : generation.longValue(), issuedAt, expiresAt);
+    }
+
+    private List<GrantedAuthority> authoritiesOf(Claims claims) {
+        @SuppressWarnings("unchecked")
+        List<String> authorities = (List<String>) claims.get(AUTHORITIES_CLAIM);
+
+        var permissions = claims.get(PERMISSIONS_CLAIM, String.class);
+        if (permissions == null)
+            return authorities.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList());
+
+        var version = ((Number) claims.get(CATALOG_VERSION_CLAIM)).longValue();
+        return permissionCatalog.decode(version, permissions, authorities);
+    }
+}
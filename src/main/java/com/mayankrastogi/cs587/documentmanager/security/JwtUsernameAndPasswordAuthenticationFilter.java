@@ -1,10 +1,13 @@
 package com.mayankrastogi.cs587.documentmanager.security;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -20,16 +23,27 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.sql.Date;
 import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 public class JwtUsernameAndPasswordAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
+    private static final ObjectReader CREDENTIALS_READER = new ObjectMapper().readerFor(UserCredentials.class);
+
     private final JwtConfig jwtConfig;
+    private final PermissionCatalog permissionCatalog;
+    private final LoginExecutor loginExecutor;
+    private final TokenRevocations tokenRevocations;
     private AuthenticationManager authManager;
 
-    public JwtUsernameAndPasswordAuthenticationFilter(AuthenticationManager authManager, JwtConfig jwtConfig) {
+    public JwtUsernameAndPasswordAuthenticationFilter(AuthenticationManager authManager, JwtConfig jwtConfig,
+                                                      PermissionCatalog permissionCatalog, LoginExecutor loginExecutor,
+                                                      TokenRevocations tokenRevocations) {
         this.authManager = authManager;
         this.jwtConfig = jwtConfig;
+        this.permissionCatalog = permissionCatalog;
+        this.loginExecutor = loginExecutor;
+        this.tokenRevocations = tokenRevocations;
 
         this.setRequiresAuthenticationRequestMatcher(new AntPathRequestMatcher(jwtConfig.getUri(), "POST"));
     }
@@ -39,13 +53,22 @@ public class JwtUsernameAndPasswordAuthenticationFilter extends UsernamePassword
             throws AuthenticationException {
 
         try {
-            UserCredentials credentials = new ObjectMapper().readValue(request.getInputStream(), UserCredentials.class);
+            UserCredentials credentials = CREDENTIALS_READER.readValue(request.getInputStream());
             UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                     credentials.username,
                     credentials.password,
                     Collections.emptyList()
             );
-            return authManager.authenticate(authToken);
+            return loginExecutor.authenticate(() -> authManager.authenticate(authToken));
+        } catch (RejectedExecutionException e) {
+            try {
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many logins in progress.");
+            } catch (IOException ioException) {
+                throw new RuntimeException(ioException);
+            }
+            // A null result tells the filter that the response has been handled.
+            return null;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -56,12 +79,23 @@ public class JwtUsernameAndPasswordAuthenticationFilter extends UsernamePassword
                                             Authentication auth) throws IOException, ServletException {
 
         long now = System.currentTimeMillis();
-        String token = Jwts.builder()
-                .setSubject(auth.getName())
-                .claim(
-                        "authorities",
-                        auth.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList())
-                )
+        JwtBuilder builder = Jwts.builder().setSubject(auth.getName());
+
+        if (jwtConfig.isCompactAuthorities()) {
+            var authorities = permissionCatalog.encode(auth.getAuthorities());
+            builder
+                    .claim(JwtTokenAuthenticationFilter.CATALOG_VERSION_CLAIM, authorities.getVersion())
+                    .claim(JwtTokenAuthenticationFilter.PERMISSIONS_CLAIM, authorities.getPermissions())
+                    .claim(JwtTokenAuthenticationFilter.AUTHORITIES_CLAIM, authorities.getOthers());
+        } else {
+            builder.claim(
+                    JwtTokenAuthenticationFilter.AUTHORITIES_CLAIM,
+                    auth.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList())
+            );
+        }
+
+        String token = builder
+                .claim(JwtTokenAuthenticationFilter.GENERATION_CLAIM, tokenRevocations.currentGeneration(auth.getName()))
                 .setIssuedAt(new Date(now))
                 .setExpiration(new Date(now + jwtConfig.getExpiration() * 1000))
                 .signWith(SignatureAlgorithm.HS512, jwtConfig.getSecret().getBytes())
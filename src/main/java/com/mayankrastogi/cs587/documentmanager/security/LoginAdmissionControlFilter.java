@@ -0,0 +1,30 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Limits login attempts by remote address, as {@link EndpointClass#LOGIN}. Runs before
+ * {@link JwtUsernameAndPasswordAuthenticationFilter}, so that a client guessing passwords is refused before any of its
+ * guesses costs a BCrypt hash.
+ */
+public class LoginAdmissionControlFilter extends AdmissionControlFilter {
+
+    private final RequestMatcher loginRequests;
+
+    public LoginAdmissionControlFilter(AdmissionControl admissionControl, RequestMatcher loginRequests) {
+        super(admissionControl);
+        this.loginRequests = loginRequests;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !loginRequests.matches(request);
+    }
+
+    @Override
+    protected long admit(HttpServletRequest request) {
+        return admissionControl.admit(request.getRemoteAddr(), EndpointClass.LOGIN);
+    }
+}
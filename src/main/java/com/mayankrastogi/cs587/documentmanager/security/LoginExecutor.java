@@ -0,0 +1,78 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password verification on a fixed pool of worker threads with a bounded queue, so that a burst of logins can
+ * only tie up as many servlet threads as there are workers and queue slots. Logins beyond that are rejected right away
+ * with a {@link RejectedExecutionException}.
+ * <p>
+ * The pool publishes the {@code executor.*} meters tagged {@code name=login}, including the queue depth.
+ */
+@Slf4j
+@Component
+public class LoginExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    public LoginExecutor(@Value("${security.login.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int threads,
+                         @Value("${security.login.queue-capacity:64}") int queueCapacity,
+                         @Value("${security.login.timeout-millis:5000}") long timeoutMillis,
+                         MeterRegistry meterRegistry) {
+        var threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    var thread = new Thread(runnable, "login-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.timeoutMillis = timeoutMillis;
+        new ExecutorServiceMetrics(executor, "login", List.of()).bindTo(meterRegistry);
+        log.info("Verifying logins on " + threads + " threads with a queue of " + queueCapacity + ".");
+    }
+
+    /**
+     * Runs {@code verification} on the login pool and waits for its result.
+     *
+     * @throws RejectedExecutionException if the queue is full or the verification did not finish in time
+     */
+    public Authentication authenticate(Callable<Authentication> verification) {
+        Future<Authentication> future = executor.submit(verification);
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new AuthenticationServiceException("Login verification failed.", e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RejectedExecutionException("Login verification timed out.", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while verifying login.", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
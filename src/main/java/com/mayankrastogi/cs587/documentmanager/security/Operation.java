@@ -0,0 +1,21 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import lombok.Getter;
+
+/**
+ * Operations that can be performed on a labeled document. A permission id is the operation's prefix followed by the
+ * label name, e.g. {@code readSecret}.
+ */
+public enum Operation {
+    READ("read"),
+    WRITE("write"),
+    UPGRADE("upgrade"),
+    DOWNGRADE("downgrade");
+
+    @Getter
+    private final String prefix;
+
+    Operation(String prefix) {
+        this.prefix = prefix;
+    }
+}
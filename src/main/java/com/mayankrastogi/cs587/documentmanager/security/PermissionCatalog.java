@@ -0,0 +1,159 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Permission;
+import com.mayankrastogi.cs587.documentmanager.events.PermissionChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.PermissionRepository;
+import io.jsonwebtoken.MalformedJwtException;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.StreamSupport;
+
+/**
+ * Numbers every permission so that the permissions in a token can be sent as a bitset instead of a list of names.
+ * <p>
+ * Permission ids are numbered in sorted order and every numbering is identified by the first 8 bytes of a SHA-256 of
+ * the ids, so any node that sees the same permissions assigns the same bits. Numberings that have been replaced are
+ * kept, so that tokens issued before a permission was added can still be decoded.
+ * <p>
+ * A token of an unknown version makes the catalog reload the permissions, in case another node added one, but no
+ * more than once every {@link #REFRESH_INTERVAL} unless a permission changed here in the meantime.
+ */
+@Slf4j
+@Component
+public class PermissionCatalog {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final Duration REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private volatile Snapshot current;
+    private volatile long refreshedAt;
+
+    /**
+     * Splits {@code authorities} into a bitset of the permissions in the catalog and a list of everything else, e.g.
+     * role ids.
+     */
+    public CompactAuthorities encode(Collection<? extends GrantedAuthority> authorities) {
+        var snapshot = current();
+        var bits = new byte[(snapshot.authorities.length + 7) / 8];
+        var others = new ArrayList<String>();
+
+        for (var authority : authorities) {
+            var index = snapshot.indexOf.get(authority.getAuthority());
+            if (index == null)
+                others.add(authority.getAuthority());
+            else
+                bits[index >>> 3] |= 1 << (index & 7);
+        }
+        return new CompactAuthorities(snapshot.version, ENCODER.encodeToString(bits), others);
+    }
+
+    /**
+     * The authorities encoded by {@link #encode(Collection)}. Fails if the token was encoded against a catalog version
+     * this node has never seen.
+     */
+    public List<GrantedAuthority> decode(long version, String permissions, List<String> others) {
+        var snapshot = snapshots.get(version);
+        if (snapshot == null) {
+            refreshIfStale();
+            snapshot = snapshots.get(version);
+            if (snapshot == null)
+                throw new MalformedJwtException("Unknown permission catalog version " + version + ".");
+        }
+
+        var bits = DECODER.decode(permissions);
+        var authorities = new ArrayList<GrantedAuthority>(bits.length * 8 + others.size());
+        for (int i = 0; i < bits.length; i++) {
+            for (int b = bits[i] & 0xff; b != 0; b &= b - 1) {
+                var index = i * 8 + Integer.numberOfTrailingZeros(b);
+                if (index < snapshot.authorities.length)
+                    authorities.add(snapshot.authorities[index]);
+            }
+        }
+        for (var other : others)
+            authorities.add(new SimpleGrantedAuthority(other));
+        return authorities;
+    }
+
+    @EventListener
+    public void onPermissionChanged(PermissionChangedEvent event) {
+        var snapshot = current;
+        if (snapshot != null && !snapshot.indexOf.containsKey(event.getPermissionId()))
+            current = null;
+    }
+
+    private Snapshot current() {
+        var snapshot = current;
+        return snapshot == null ? refresh() : snapshot;
+    }
+
+    private synchronized void refreshIfStale() {
+        if (current == null || System.nanoTime() - refreshedAt >= REFRESH_INTERVAL.toNanos())
+            refresh();
+    }
+
+    private synchronized Snapshot refresh() {
+        var ids = StreamSupport.stream(permissionRepository.findAll().spliterator(), false)
+                .map(Permission::getId)
+                .sorted()
+                .toArray(String[]::new);
+
+        var snapshot = new Snapshot(ids);
+        var known = snapshots.putIfAbsent(snapshot.version, snapshot);
+        current = known == null ? snapshot : known;
+        refreshedAt = System.nanoTime();
+        if (known == null)
+            log.info("Permission catalog version " + snapshot.version + " has " + ids.length + " permissions.");
+        return current;
+    }
+
+    @Value
+    public static class CompactAuthorities {
+        long version;
+        String permissions;
+        List<String> others;
+    }
+
+    private static class Snapshot {
+        final long version;
+        final Map<String, Integer> indexOf = new HashMap<>();
+        final GrantedAuthority[] authorities;
+
+        Snapshot(String[] ids) {
+            var digest = sha256();
+            authorities = new GrantedAuthority[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                digest.update(ids[i].getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+                indexOf.put(ids[i], i);
+                authorities[i] = new SimpleGrantedAuthority(ids[i]);
+            }
+            version = ByteBuffer.wrap(digest.digest()).getLong();
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
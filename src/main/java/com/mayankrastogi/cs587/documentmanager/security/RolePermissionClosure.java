@@ -0,0 +1,188 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.events.RoleChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository.Edge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of every role's transitive closure over role inheritance: the roles it extends and all the
+ * permissions they grant, ready to be handed out as authorities at login.
+ * <p>
+ * The snapshot is loaded on first use and shared read-only between threads. When a role is saved, only that role and
+ * the roles inheriting from it are recomputed, and the result is published as a new snapshot.
+ */
+@Slf4j
+@Component
+public class RolePermissionClosure {
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * The roles and permissions granted by {@code roleIds}, including inherited ones.
+     */
+    public List<GrantedAuthority> authoritiesOf(Collection<String> roleIds) {
+        var current = snapshot();
+        if (roleIds.size() == 1)
+            return current.closureOf(roleIds.iterator().next()).authorities;
+
+        var authorities = new LinkedHashSet<GrantedAuthority>();
+        for (var roleId : roleIds)
+            authorities.addAll(current.closureOf(roleId).authorities);
+        return new ArrayList<>(authorities);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRoleChanged(RoleChangedEvent event) {
+        var current = snapshot;
+        if (current == null)
+            return;
+
+        var roleId = event.getRoleId();
+        var definition = new Definition(
+                targetsOf(roleRepository.findPermissionEdgesByRoleId(roleId)),
+                targetsOf(roleRepository.findParentEdgesByRoleId(roleId))
+        );
+        snapshot = current.withRole(roleId, definition);
+    }
+
+    private Snapshot snapshot() {
+        var current = snapshot;
+        return current == null ? load() : current;
+    }
+
+    private synchronized Snapshot load() {
+        if (snapshot != null)
+            return snapshot;
+
+        var permissions = roleRepository.findAllPermissionEdges().stream()
+                .collect(Collectors.groupingBy(Edge::getRoleId, Collectors.mapping(Edge::getTargetId, Collectors.toSet())));
+        var parents = roleRepository.findAllParentEdges().stream()
+                .collect(Collectors.groupingBy(Edge::getRoleId, Collectors.mapping(Edge::getTargetId, Collectors.toSet())));
+
+        var definitions = new HashMap<String, Definition>();
+        for (var roleId : roleRepository.findAllIds()) {
+            definitions.put(roleId, new Definition(
+                    permissions.getOrDefault(roleId, Set.of()),
+                    parents.getOrDefault(roleId, Set.of())
+            ));
+        }
+
+        snapshot = new Snapshot(definitions, definitions.keySet());
+        log.info("Computed permission closures of " + definitions.size() + " roles.");
+        return snapshot;
+    }
+
+    private static Set<String> targetsOf(List<Edge> edges) {
+        return edges.stream().map(Edge::getTargetId).collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static class Definition {
+        final Set<String> permissions;
+        final Set<String> parents;
+
+        Definition(Set<String> permissions, Set<String> parents) {
+            this.permissions = Set.copyOf(permissions);
+            this.parents = Set.copyOf(parents);
+        }
+    }
+
+    private static class Closure {
+        static final Closure EMPTY = new Closure(Set.of(), Set.of(), List.of());
+
+        /**
+         * The role itself and every role it inherits from.
+         */
+        final Set<String> roles;
+        final Set<String> permissions;
+        final List<GrantedAuthority> authorities;
+
+        Closure(Set<String> roles, Set<String> permissions, List<GrantedAuthority> authorities) {
+            this.roles = roles;
+            this.permissions = permissions;
+            this.authorities = authorities;
+        }
+    }
+
+    private static class Snapshot {
+        private final Map<String, Definition> definitions;
+        private final Map<String, Closure> closures;
+
+        /**
+         * Builds a snapshot from {@code definitions}, computing the closures of the {@code stale} roles and reusing
+         * {@code closures} for all others.
+         */
+        private Snapshot(Map<String, Definition> definitions, Map<String, Closure> closures, Set<String> stale) {
+            this.definitions = definitions;
+            this.closures = new HashMap<>(closures);
+            this.closures.keySet().removeAll(stale);
+            for (var roleId : stale)
+                computeClosure(roleId, new HashSet<>());
+        }
+
+        Snapshot(Map<String, Definition> definitions, Set<String> roleIds) {
+            this(definitions, Map.of(), roleIds);
+        }
+
+        Closure closureOf(String roleId) {
+            return closures.getOrDefault(roleId, Closure.EMPTY);
+        }
+
+        Snapshot withRole(String roleId, Definition definition) {
+            var newDefinitions = new HashMap<>(definitions);
+            newDefinitions.put(roleId, definition);
+
+            var stale = new HashSet<String>();
+            stale.add(roleId);
+            closures.forEach((id, closure) -> {
+                if (closure.roles.contains(roleId))
+                    stale.add(id);
+            });
+            return new Snapshot(newDefinitions, closures, stale);
+        }
+
+        private Closure computeClosure(String roleId, Set<String> path) {
+            var closure = closures.get(roleId);
+            if (closure != null)
+                return closure;
+
+            var definition = definitions.get(roleId);
+            if (definition == null)
+                return Closure.EMPTY;
+            if (!path.add(roleId)) {
+                log.warn("Ignoring cyclic inheritance through role `" + roleId + "`.");
+                return Closure.EMPTY;
+            }
+
+            var roles = new LinkedHashSet<String>();
+            var permissions = new TreeSet<>(definition.permissions);
+            roles.add(roleId);
+            for (var parent : definition.parents) {
+                var inherited = computeClosure(parent, path);
+                roles.addAll(inherited.roles);
+                permissions.addAll(inherited.permissions);
+            }
+            path.remove(roleId);
+
+            var authorities = new ArrayList<GrantedAuthority>(roles.size() + permissions.size());
+            roles.forEach(role -> authorities.add(new SimpleGrantedAuthority(role)));
+            permissions.forEach(permission -> authorities.add(new SimpleGrantedAuthority(permission)));
+
+            closure = new Closure(Collections.unmodifiableSet(roles), Collections.unmodifiableSet(permissions),
+                    Collections.unmodifiableList(authorities));
+            closures.put(roleId, closure);
+            return closure;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.mayankrastogi.cs587.documentmanager.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -12,6 +14,9 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+
+import javax.servlet.http.HttpServletRequest;
 
 @Configuration
 @EnableWebSecurity
@@ -23,6 +28,30 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
     @Autowired
     private JwtConfig jwtConfig;
 
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private PermissionCatalog permissionCatalog;
+
+    @Autowired
+    private LoginExecutor loginExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TokenRevocations tokenRevocations;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Value("${security.bcrypt.strength:10}")
+    private int bcryptStrength;
+
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
@@ -32,12 +61,29 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
                 .exceptionHandling()
                 .authenticationEntryPoint(new JwtAuthenticationEntryPoint())
                 .and()
-                .addFilter(new JwtUsernameAndPasswordAuthenticationFilter(authenticationManager(), jwtConfig))
-                .addFilterAfter(new JwtTokenAuthenticationFilter(jwtConfig), JwtUsernameAndPasswordAuthenticationFilter.class)
+                .addFilterBefore(new LoginAdmissionControlFilter(admissionControl, new AntPathRequestMatcher(jwtConfig.getUri(), "POST")), JwtUsernameAndPasswordAuthenticationFilter.class)
+                .addFilter(new JwtUsernameAndPasswordAuthenticationFilter(authenticationManager(), jwtConfig, permissionCatalog, loginExecutor, tokenRevocations))
+                .addFilterAfter(new JwtTokenAuthenticationFilter(jwtConfig, verifiedTokenCache, permissionCatalog, tokenRevocations, meterRegistry), JwtUsernameAndPasswordAuthenticationFilter.class)
+                .addFilterAfter(new AdmissionControlFilter(admissionControl), JwtTokenAuthenticationFilter.class)
                 .authorizeRequests()
                 .antMatchers(HttpMethod.POST, jwtConfig.getUri()).permitAll()
+                .requestMatchers(this::isScrape).permitAll()
                 .antMatchers("/document/**").fullyAuthenticated()
-                .antMatchers("/users/**").hasAuthority("manageUsers");
+                .antMatchers("/users/**").hasAuthority("manageUsers")
+                .antMatchers("/roles/**").hasAuthority("manageUsers")
+                .antMatchers("/actuator/**").hasAuthority("manageUsers");
+    }
+
+    /**
+     * Whether the request is for the health or Prometheus endpoint on the management port, so that Prometheus can scrape
+     * it without a token. That port listens on {@code 127.0.0.1} unless {@code management.server.address} says otherwise;
+     * every other actuator endpoint on it still needs {@code manageUsers}.
+     */
+    private boolean isScrape(HttpServletRequest request) {
+        if (managementPort <= 0 || request.getLocalPort() != managementPort)
+            return false;
+        var path = request.getServletPath();
+        return path.equals("/actuator/prometheus") || path.equals("/actuator/health");
     }
 
     @Override
@@ -54,6 +100,6 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
 
     @Bean
     public PasswordEncoder encoder() {
-        return new BCryptPasswordEncoder();
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), meterRegistry);
     }
 }
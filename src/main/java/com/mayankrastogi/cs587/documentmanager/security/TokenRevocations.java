@@ -0,0 +1,115 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.events.TokensRevokedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.RevokedSubjectRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens that must be rejected before they expire, because their user's roles or password changed, or the user was
+ * deleted.
+ * <p>
+ * Every user has a token generation, which is put in the tokens issued to them and bumped to revoke all of them. Only
+ * users whose tokens were ever revoked are tracked: they are held exactly in a map, fronted by a bloom filter so that
+ * the common case, a user with nothing revoked, is answered without touching the map. The users with a non-zero
+ * generation are loaded at startup, and revocations are pushed in as {@link TokensRevokedEvent}s, so checking a token
+ * never queries the database.
+ * <p>
+ * Subjects that no longer name a user, such as deleted users, are loaded from their {@code RevokedSubject} rows, until
+ * the tokens issued to them have expired.
+ */
+@Slf4j
+@Component
+public class TokenRevocations {
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RevokedSubjectRepository revokedSubjectRepository;
+
+    @Value("${security.jwt.revocation.expected-subjects:100000}")
+    private int expectedSubjects;
+
+    @Value("${security.jwt.expiration:#{24*60*60}}")
+    private int expiration;
+
+    private final Map<String, Revocation> revocations = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+
+    @PostConstruct
+    public void load() {
+        filter = new BloomFilter(expectedSubjects, FALSE_POSITIVE_PROBABILITY);
+        for (var generation : userRepository.findTokenGenerations())
+            revoke(generation.getEmail(), generation.getTokenGeneration(), 0);
+        var users = revocations.size();
+
+        var cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(expiration);
+        revokedSubjectRepository.deleteByNotBeforeLessThanEqual(cutoff);
+        for (var subject : revokedSubjectRepository.findByNotBeforeGreaterThan(cutoff))
+            revoke(subject.getSubject(), subject.getTokenGeneration(), subject.getNotBefore());
+        log.info("Loaded token generations of " + users + " users and " + (revocations.size() - users) +
+                " revoked subjects.");
+    }
+
+    /**
+     * Whether a token issued to {@code subject} at {@code issuedAt} (milliseconds since the epoch) with the given
+     * generation has been revoked.
+     */
+    public boolean isRevoked(String subject, long generation, long issuedAt) {
+        if (!filter.mightContain(subject))
+            return false;
+        var revocation = revocations.get(subject);
+        return revocation != null && (generation < revocation.generation || issuedAt < revocation.notBefore);
+    }
+
+    /**
+     * The generation to put in new tokens issued to {@code subject}.
+     */
+    public long currentGeneration(String subject) {
+        var revocation = revocations.get(subject);
+        return revocation == null ? 0 : revocation.generation;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTokensRevoked(TokensRevokedEvent event) {
+        revoke(event.getSubject(), event.getGeneration(), event.getNotBefore());
+    }
+
+    private synchronized void revoke(String subject, long generation, long notBefore) {
+        // The map is updated before the filter, so that a reader who sees the subject in the filter finds it in the map
+        revocations.merge(subject, new Revocation(generation, notBefore), Revocation::max);
+        if (revocations.size() > filter.capacity()) {
+            var grown = new BloomFilter(filter.capacity() * 2, FALSE_POSITIVE_PROBABILITY);
+            revocations.keySet().forEach(grown::add);
+            filter = grown;
+        } else {
+            filter.add(subject);
+        }
+    }
+
+    private static class Revocation {
+        final long generation;
+        final long notBefore;
+
+        Revocation(long generation, long notBefore) {
+            this.generation = generation;
+            this.notBefore = notBefore;
+        }
+
+        Revocation max(Revocation other) {
+            return new Revocation(Math.max(generation, other.generation), Math.max(notBefore, other.notBefore));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.events.LabelChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.LabelRepository;
+import com.mayankrastogi.cs587.documentmanager.security.Operation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the clearance decisions made by {@link DocumentService} as the {@code documents.authorization} meter, tagged
+ * with the label, the operation and whether it was allowed.
+ * <p>
+ * Counters for every known label are registered up front and looked up by label name, so recording a decision does
+ * not allocate. Decisions on labels saved since the last refresh are counted under the label {@code other}.
+ */
+@Component
+public class AuthorizationMetrics {
+
+    private static final String METER_NAME = "documents.authorization";
+    private static final String OTHER_LABEL = "other";
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    @Autowired
+    private LabelRepository labelRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private volatile Map<String, Counter[]> countersByLabel;
+    private volatile Counter[] otherCounters;
+
+    public void record(Operation operation, Label label, boolean allowed) {
+        var counters = countersOf(label.getName());
+        counters[operation.ordinal() * 2 + (allowed ? 1 : 0)].increment();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerCounters() {
+        refresh();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLabelChanged(LabelChangedEvent event) {
+        if (countersByLabel != null)
+            refresh();
+    }
+
+    private Counter[] countersOf(String labelName) {
+        var current = countersByLabel;
+        if (current == null)
+            current = refresh();
+        var counters = current.get(labelName);
+        return counters == null ? otherCounters : counters;
+    }
+
+    private synchronized Map<String, Counter[]> refresh() {
+        var counters = new HashMap<String, Counter[]>();
+        for (var label : labelRepository.findAllByOrderByRankAscIdAsc())
+            counters.put(label.getName(), register(label.getName()));
+        otherCounters = register(OTHER_LABEL);
+        countersByLabel = counters;
+        return counters;
+    }
+
+    /**
+     * Deny and allow counters of every operation on a label, indexed by {@code operation.ordinal() * 2 + allowed}.
+     */
+    private Counter[] register(String labelName) {
+        var counters = new Counter[OPERATIONS.length * 2];
+        for (var operation : OPERATIONS) {
+            for (var allowed = 0; allowed < 2; allowed++) {
+                counters[operation.ordinal() * 2 + allowed] = Counter
+                        .builder(METER_NAME)
+                        .description("Clearance decisions on documents")
+                        .tag("label", labelName)
+                        .tag("operation", operation.name().toLowerCase())
+                        .tag("decision", allowed == 1 ? "allow" : "deny")
+                        .register(meterRegistry);
+            }
+        }
+        return counters;
+    }
+}
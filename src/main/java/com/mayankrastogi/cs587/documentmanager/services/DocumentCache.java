@@ -0,0 +1,159 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentSummary;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentDeletedEvent;
+import com.mayankrastogi.cs587.documentmanager.events.LabelChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Read-through cache of document metadata, up to {@code documents.cache.maximum-size} documents, and of the contents
+ * of documents up to {@code documents.cache.max-content-bytes}, weighted by length up to
+ * {@code documents.cache.maximum-weight} bytes. Also maps document names to ids.
+ * <p>
+ * Metadata misses load just the summary. Contents are only read when they are asked for, and are cached by content
+ * hash, so documents with the same contents share an entry and saving a document never makes its old entry wrong.
+ * <p>
+ * This cache does no authorization of its own: callers must still check clearance on every hit. Metadata entries are
+ * dropped whenever a document is saved or deleted, or a label changes. Hits, misses and evictions are published as
+ * the {@code cache.*} meters tagged {@code cache=documents} and {@code cache=document-contents}.
+ */
+@Component
+public class DocumentCache {
+
+    private final DocumentRepository documentRepository;
+    private final ContentStore contentStore;
+    private final long maxContentBytes;
+    private final Cache<Long, CachedDocument> documents;
+    private final Cache<String, byte[]> contents;
+    private final Cache<String, Long> idsByName;
+
+    public DocumentCache(DocumentRepository documentRepository,
+                         ContentStore contentStore,
+                         @Value("${documents.cache.maximum-size:100000}") long maximumSize,
+                         @Value("${documents.cache.maximum-weight:67108864}") long maximumWeight,
+                         @Value("${documents.cache.max-content-bytes:262144}") long maxContentBytes,
+                         @Value("${documents.cache.names.maximum-size:10000}") long maximumNames,
+                         MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.contentStore = contentStore;
+        this.maxContentBytes = maxContentBytes;
+        this.documents = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        this.contents = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((String hash, byte[] contents) -> contents.length)
+                .recordStats()
+                .build();
+        this.idsByName = Caffeine.newBuilder()
+                .maximumSize(maximumNames)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, documents, "documents");
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "document-contents");
+    }
+
+    /**
+     * Metadata of a document. The content hash of the result may be {@code null}; use {@link #getForContents} when
+     * the contents are needed.
+     */
+    public Optional<CachedDocument> get(long id) {
+        return Optional.ofNullable(documents.get(id, key -> documentRepository
+                .findSummaryById(key)
+                .map(summary -> new CachedDocument(summary, null))
+                .orElse(null)));
+    }
+
+    /**
+     * Metadata of a document along with the hash of its contents, loading the document if the entry lacks the hash.
+     */
+    public Optional<CachedDocument> getForContents(long id) {
+        return Optional.ofNullable(documents.asMap().compute(id, (key, cached) ->
+                cached != null && cached.getContentHash() != null ? cached : documentRepository
+                        .findById(key)
+                        .map(document -> new CachedDocument(summaryOf(document), document.getContentHash()))
+                        .orElse(null)));
+    }
+
+    /**
+     * The uncompressed contents of a document got from {@link #getForContents}, or {@code null} if the document is
+     * too large to keep them in memory.
+     */
+    public byte[] contentsOf(CachedDocument document) {
+        if (document.getContentHash() == null || document.getSummary().getSize() > maxContentBytes)
+            return null;
+        return contents.get(document.getContentHash(), this::read);
+    }
+
+    public Optional<CachedDocument> getByName(String name) {
+        var id = idsByName.get(name, key -> documentRepository.findIdByName(key).orElse(null));
+        if (id == null)
+            return Optional.empty();
+
+        var document = get(id);
+        if (document.isPresent() && document.get().getSummary().getName().equals(name))
+            return document;
+
+        // Renamed since the name was mapped
+        idsByName.invalidate(name);
+        return documentRepository.findIdByName(name).flatMap(this::get);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        invalidate(event.getDocumentId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentDeleted(DocumentDeletedEvent event) {
+        invalidate(event.getDocumentId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLabelChanged(LabelChangedEvent event) {
+        documents.invalidateAll();
+    }
+
+    private void invalidate(long id) {
+        var document = documents.getIfPresent(id);
+        if (document != null)
+            idsByName.invalidate(document.getSummary().getName());
+        documents.invalidate(id);
+    }
+
+    private byte[] read(String hash) {
+        try (var contents = contentStore.load(hash).getInputStream()) {
+            return contents.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DocumentSummary summaryOf(Document document) {
+        return new DocumentSummary(document.getId(), document.getName(), document.getLabel(), document.getSize(),
+                document.getLastModified(), document.getVersion());
+    }
+
+    @lombok.Value
+    public static class CachedDocument {
+        DocumentSummary summary;
+        /**
+         * The hash of the contents, or {@code null} if only the metadata was loaded.
+         */
+        String contentHash;
+    }
+}
@@ -0,0 +1,78 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Writes documents, contents included, as newline-delimited JSON. Documents are read through a database cursor and
+ * detached once written, and contents are streamed from the {@link ContentStore}, so memory use does not grow with
+ * the size of the corpus.
+ */
+@Service
+public class DocumentExportService {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private ContentStore contentStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Writes every document whose label is one of {@code labelNames} to {@code out}, one JSON object per line, ordered
+     * by id. Returns the number of documents written.
+     */
+    @Transactional(readOnly = true)
+    public long export(Collection<String> labelNames, OutputStream out) throws IOException {
+        if (labelNames.isEmpty())
+            return 0;
+
+        long count = 0;
+        try (var documents = documentRepository.streamByLabelNameIn(labelNames);
+             var generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            for (var iterator = documents.iterator(); iterator.hasNext(); count++) {
+                var document = iterator.next();
+                write(document, generator);
+                entityManager.detach(document);
+            }
+        }
+        return count;
+    }
+
+    private void write(Document document, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", document.getId());
+        generator.writeStringField("name", document.getName());
+        generator.writeObjectField("label", document.getLabel());
+        generator.writeNumberField("size", document.getSize());
+        generator.writeObjectField("lastModified", document.getLastModified());
+        generator.writeNumberField("version", document.getVersion());
+        generator.writeFieldName("contents");
+        try (var contents = new InputStreamReader(
+                contentStore.load(document.getContentHash()).getInputStream(), StandardCharsets.UTF_8)) {
+            generator.writeString(contents, -1);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -1,52 +1,51 @@
 package com.mayankrastogi.cs587.documentmanager.services;
 
+import com.mayankrastogi.cs587.documentmanager.audit.AuditLog;
 import com.mayankrastogi.cs587.documentmanager.entities.Document;
-import com.mayankrastogi.cs587.documentmanager.repositories.LabelRepository;
+import com.mayankrastogi.cs587.documentmanager.entities.Labeled;
+import com.mayankrastogi.cs587.documentmanager.security.AuthorizationContext;
+import com.mayankrastogi.cs587.documentmanager.security.Operation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class DocumentService {
 
     @Autowired
-    SecurityService securityService;
+    LabelLattice labelLattice;
 
     @Autowired
-    LabelRepository labelRepository;
+    AuthorizationMetrics authorizationMetrics;
 
-    public boolean canRead(Document document) {
-        return securityService.hasPermission("read" + document.getLabel().getName());
+    @Autowired
+    AuditLog auditLog;
+
+    public boolean canRead(Labeled document) {
+        return isAllowed(Operation.READ, document);
     }
 
-    public boolean canWrite(Document document) {
-        return securityService.hasPermission("write" + document.getLabel().getName());
+    public boolean canWrite(Labeled document) {
+        return isAllowed(Operation.WRITE, document);
     }
 
-    public boolean canUpgrade(Document document) {
-        return securityService.hasPermission("upgrade" + document.getLabel().getName());
+    public boolean canUpgrade(Labeled document) {
+        return isAllowed(Operation.UPGRADE, document);
     }
 
-    public boolean canDowngrade(Document document) {
-        return securityService.hasPermission("downgrade" + document.getLabel().getName());
+    public boolean canDowngrade(Labeled document) {
+        return isAllowed(Operation.DOWNGRADE, document);
     }
 
     public Set<String> labelsAllowedToRead() {
-        return securityService
-                .getAllPermissions()
-                .stream()
-                .filter(p -> p.startsWith("read"))
-                .map(p -> p.replaceFirst("read", ""))
-                .collect(Collectors.toUnmodifiableSet());
+        return AuthorizationContext.current().getReadableLabels();
     }
 
     public Optional<Document> downgraded(Document document) {
-        var labelId = document.getLabel().getId();
-        return labelRepository
-                .findFirstByIdLessThanAndIdGreaterThan(labelId, labelId - 2)
+        return labelLattice
+                .below(document.getLabel())
                 .map(label -> {
                     document.setLabel(label);
                     return document;
@@ -54,12 +53,19 @@ public class DocumentService {
     }
 
     public Optional<Document> upgraded(Document document) {
-        var labelId = document.getLabel().getId();
-        return labelRepository
-                .findFirstByIdLessThanAndIdGreaterThan(labelId + 2, labelId)
+        return labelLattice
+                .above(document.getLabel())
                 .map(label -> {
                     document.setLabel(label);
                     return document;
                 });
     }
+
+    private boolean isAllowed(Operation operation, Labeled document) {
+        var label = document.getLabel();
+        var allowed = AuthorizationContext.current().isAllowed(operation, label);
+        authorizationMetrics.record(operation, label, allowed);
+        auditLog.decided(operation, document, allowed);
+        return allowed;
+    }
 }
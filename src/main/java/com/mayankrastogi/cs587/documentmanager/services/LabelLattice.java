@@ -0,0 +1,99 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.events.LabelChangedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.LabelRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory, totally ordered view of all labels, from the lowest classification to the highest.
+ * <p>
+ * The labels are loaded on first use and kept in an immutable snapshot, so finding a label's neighbours, or a label by
+ * its id or name, never queries the database. Saving any label replaces the whole snapshot at once.
+ */
+@Slf4j
+@Component
+public class LabelLattice {
+
+    @Autowired
+    private LabelRepository labelRepository;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * The label right above {@code label}, if it is not already the highest.
+     */
+    public Optional<Label> above(Label label) {
+        var rank = rankOf(label);
+        return rank < 0 ? Optional.empty() : snapshot().at(rank + 1);
+    }
+
+    /**
+     * The label right below {@code label}, if it is not already the lowest.
+     */
+    public Optional<Label> below(Label label) {
+        var rank = rankOf(label);
+        return rank < 0 ? Optional.empty() : snapshot().at(rank - 1);
+    }
+
+    public Optional<Label> byId(long id) {
+        return Optional.ofNullable(snapshot().byId.get(id));
+    }
+
+    public Optional<Label> byName(String name) {
+        return Optional.ofNullable(snapshot().byName.get(name));
+    }
+
+    /**
+     * Position of {@code label} from the lowest label, or -1 if it is unknown.
+     */
+    public int rankOf(Label label) {
+        return snapshot().rankById.getOrDefault(label.getId(), -1);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLabelChanged(LabelChangedEvent event) {
+        if (snapshot != null)
+            reload();
+    }
+
+    private Snapshot snapshot() {
+        var current = snapshot;
+        return current == null ? reload() : current;
+    }
+
+    private synchronized Snapshot reload() {
+        var labels = labelRepository.findAllByOrderByRankAscIdAsc();
+        snapshot = new Snapshot(labels);
+        log.info("Label order: " + labels.stream().map(Label::getName).reduce((a, b) -> a + " < " + b).orElse(""));
+        return snapshot;
+    }
+
+    private static class Snapshot {
+        final Label[] labels;
+        final Map<Long, Integer> rankById = new HashMap<>();
+        final Map<Long, Label> byId = new HashMap<>();
+        final Map<String, Label> byName = new HashMap<>();
+
+        Snapshot(List<Label> labels) {
+            this.labels = labels.toArray(new Label[0]);
+            for (int i = 0; i < this.labels.length; i++) {
+                rankById.put(this.labels[i].getId(), i);
+                byId.put(this.labels[i].getId(), this.labels[i]);
+                byName.put(this.labels[i].getName(), this.labels[i]);
+            }
+        }
+
+        Optional<Label> at(int rank) {
+            return rank < 0 || rank >= labels.length ? Optional.empty() : Optional.of(labels[rank]);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.mayankrastogi.cs587.documentmanager.services;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.DocumentRevision;
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.events.DocumentDeletedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRevisionRepository;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentPatch;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import com.mayankrastogi.cs587.documentmanager.storage.Delta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * History of the contents of documents, kept as delta chains with a full snapshot every
+ * {@code revisions.snapshot-interval} revisions, so that reconstructing any revision applies at most that many deltas
+ * less one.
+ * <p>
+ * Each revision is a delta against the revision before it, unless either of them is larger than
+ * {@code revisions.delta.max-bytes}, or the delta would be no smaller than the contents; those become snapshots early.
+ * The full contents of a delta revision stay in the content store while it is current, and are deleted
+ * {@code revisions.reclaim-after} after it is superseded, unless a document or a snapshot still refers to them.
+ * <p>
+ * Deleting a document drops its history along with the blobs of its contents, snapshots and deltas that nothing else
+ * refers to. Blobs stored within {@code revisions.reclaim-after} are left for the sweep of unreferenced blobs that
+ * runs every {@code storage.sweep-interval}, which also catches blobs left behind by failed saves.
+ */
+@Slf4j
+@Service
+public class RevisionStore {
+
+    private static final int RECLAIM_BATCH_SIZE = 500;
+
+    private final DocumentRevisionRepository revisionRepository;
+    private final DocumentRepository documentRepository;
+    private final ContentStore contentStore;
+    private final LabelLattice labelLattice;
+    private final int snapshotInterval;
+    private final long maxDeltaBytes;
+    private final Duration reclaimAfter;
+
+    public RevisionStore(DocumentRevisionRepository revisionRepository,
+                         DocumentRepository documentRepository,
+                         ContentStore contentStore,
+                         LabelLattice labelLattice,
+                         @Value("${revisions.snapshot-interval:10}") int snapshotInterval,
+                         @Value("${revisions.delta.max-bytes:8388608}") long maxDeltaBytes,
+                         @Value("${revisions.reclaim-after:PT1H}") Duration reclaimAfter) {
+        if (snapshotInterval < 1)
+            throw new IllegalArgumentException("revisions.snapshot-interval must be at least 1.");
+        this.revisionRepository = revisionRepository;
+        this.documentRepository = documentRepository;
+        this.contentStore = contentStore;
+        this.labelLattice = labelLattice;
+        this.snapshotInterval = snapshotInterval;
+        this.maxDeltaBytes = maxDeltaBytes;
+        this.reclaimAfter = reclaimAfter;
+    }
+
+    /**
+     * Records the current contents of a document as its first revision if it has none, before they are replaced.
+     * This starts the history of documents saved without going through {@link #record}, such as generated ones.
+     */
+    public void baseline(Document document) {
+        if (document.getContentHash() == null || revisionRepository.existsByDocumentId(document.getId()))
+            return;
+        try {
+            revisionRepository.save(snapshotOf(document, document.getLastModified()));
+        } catch (DataIntegrityViolationException e) {
+            // Recorded by a concurrent update
+        }
+    }
+
+    /**
+     * Records the contents a document has just been saved with as a new revision, unless they did not change.
+     */
+    public DocumentRevision record(Document document) throws IOException {
+        var latest = revisionRepository.findFirstByDocumentIdOrderByVersionDesc(document.getId());
+        if (latest.isPresent() && latest.get().getContentHash().equals(document.getContentHash()))
+            return latest.get();
+
+        var revision = latest.isEmpty() || latest.get().getChainLength() + 1 >= snapshotInterval
+                || latest.get().getSize() > maxDeltaBytes || document.getSize() > maxDeltaBytes
+                ? snapshotOf(document, null)
+                : deltaOf(document, latest.get());
+        revision.setAuthor(currentUser());
+        return revisionRepository.save(revision);
+    }
+
+    /**
+     * Keeps the label of the current revision of a reclassified document at the highest it has been, since its
+     * contents were held at both labels. A document without history gets its first revision here, so that the
+     * contents it had before a downgrade stay at their old label once they are replaced.
+     */
+    public void reclassified(Document document, Label from) {
+        var highest = labelLattice.rankOf(from) > labelLattice.rankOf(document.getLabel()) ? from : document.getLabel();
+        var latest = revisionRepository.findFirstByDocumentIdOrderByVersionDesc(document.getId());
+        if (latest.isEmpty()) {
+            if (document.getContentHash() == null)
+                return;
+            var revision = snapshotOf(document, document.getLastModified());
+            revision.setLabelId(highest.getId());
+            try {
+                revisionRepository.save(revision);
+            } catch (DataIntegrityViolationException e) {
+                // Recorded by a concurrent update
+            }
+        } else if (labelLattice.byId(latest.get().getLabelId())
+                .map(label -> labelLattice.rankOf(label) < labelLattice.rankOf(highest))
+                .orElse(true)) {
+            latest.get().setLabelId(highest.getId());
+            revisionRepository.save(latest.get());
+        }
+    }
+
+    /**
+     * Up to {@code limit} revisions of a document older than version {@code beforeVersion}, newest first. A document
+     * that was never updated has just the one revision.
+     */
+    public List<DocumentRevision> list(Document document, long beforeVersion, int limit) {
+        var revisions = revisionRepository.findByDocumentIdAndVersionLessThanOrderByVersionDesc(document.getId(),
+                beforeVersion, PageRequest.of(0, limit));
+        if (revisions.isEmpty() && document.getVersion() < beforeVersion
+                && !revisionRepository.existsByDocumentId(document.getId()))
+            return List.of(snapshotOf(document, document.getLastModified()));
+        return revisions;
+    }
+
+    public Optional<DocumentRevision> find(Document document, long version) {
+        var revision = revisionRepository.findByDocumentIdAndVersion(document.getId(), version);
+        if (revision.isEmpty() && version == document.getVersion() && !revisionRepository.existsByDocumentId(document.getId()))
+            return Optional.of(snapshotOf(document, document.getLastModified()));
+        return revision;
+    }
+
+    /**
+     * The revision before the given one, if any.
+     */
+    public Optional<DocumentRevision> previous(DocumentRevision revision) {
+        return revisionRepository.findFirstByDocumentIdAndVersionLessThanOrderByVersionDesc(
+                revision.getDocumentId(), revision.getVersion());
+    }
+
+    /**
+     * The contents of a revision. Snapshots are streamed from the content store; any other revision is
+     * reconstructed in memory, which is bounded by {@code revisions.delta.max-bytes}.
+     */
+    public Resource load(DocumentRevision revision) throws IOException {
+        if (revision.isSnapshot())
+            return contentStore.load(revision.getContentHash());
+        return new ByteArrayResource(contentsOf(revision));
+    }
+
+    /**
+     * The edits that turn the contents of {@code from} into those of {@code to}, or of the empty document if
+     * {@code from} is {@code null}.
+     *
+     * @throws IllegalArgumentException if either revision is larger than {@code revisions.delta.max-bytes}
+     */
+    public ContentPatch diff(DocumentRevision from, DocumentRevision to) throws IOException {
+        if ((from != null && from.getSize() > maxDeltaBytes) || to.getSize() > maxDeltaBytes)
+            throw new IllegalArgumentException("Revisions larger than " + maxDeltaBytes + " bytes cannot be diffed.");
+        return Delta.diff(from == null ? new byte[0] : contentsOf(from), contentsOf(to));
+    }
+
+    /**
+     * The contents of a revision, read directly while they are still in the content store, and otherwise rebuilt by
+     * applying the deltas from the nearest snapshot.
+     */
+    byte[] contentsOf(DocumentRevision revision) throws IOException {
+        if (revision.isSnapshot())
+            return read(revision.getContentHash());
+        if (!revision.isContentsReleased()) {
+            try {
+                return read(revision.getContentHash());
+            } catch (IOException e) {
+                // Reclaimed since the revision was loaded
+            }
+        }
+
+        var deltas = new ArrayDeque<DocumentRevision>(revision.getChainLength());
+        var current = revision;
+        while (!current.isSnapshot()) {
+            deltas.push(current);
+            var base = current;
+            current = revisionRepository
+                    .findByDocumentIdAndVersion(base.getDocumentId(), base.getBaseVersion())
+                    .orElseThrow(() -> new IllegalStateException("Revision " + base.getVersion() + " of document " +
+                            base.getDocumentId() + " is missing its base revision " + base.getBaseVersion() + "."));
+        }
+
+        var contents = read(current.getContentHash());
+        while (!deltas.isEmpty())
+            contents = Delta.apply(contents, read(deltas.pop().getDeltaHash()));
+        return contents;
+    }
+
+    /**
+     * Deletes the full contents of delta revisions superseded more than {@code revisions.reclaim-after} ago.
+     */
+    @Scheduled(initialDelayString = "${revisions.reclaim-interval:PT15M}",
+            fixedDelayString = "${revisions.reclaim-interval:PT15M}")
+    public void reclaimSupersededContents() {
+        var cutoff = Instant.now().minus(reclaimAfter);
+        var reclaimed = 0;
+        List<DocumentRevision> batch;
+        do {
+            batch = revisionRepository.findReleasable(cutoff, PageRequest.of(0, RECLAIM_BATCH_SIZE));
+            for (var revision : batch) {
+                var hash = revision.getContentHash();
+                try {
+                    if (!documentRepository.existsByContentHash(hash)
+                            && !revisionRepository.existsByContentHashAndBaseVersionIsNull(hash)
+                            && contentStore.deleteIfIdle(hash, reclaimAfter))
+                        reclaimed++;
+                } catch (IOException e) {
+                    log.warn("Could not reclaim the contents of revision " + revision.getVersion() + " of document " +
+                            revision.getDocumentId(), e);
+                }
+                // Any later revision with the same contents is reclaimed on its own turn
+                revision.setContentsReleased(true);
+                revisionRepository.save(revision);
+            }
+        } while (batch.size() == RECLAIM_BATCH_SIZE);
+
+        if (reclaimed > 0)
+            log.info("Reclaimed the contents of " + reclaimed + " superseded revision(s)");
+    }
+
+    /**
+     * Deletes the blobs that no document or revision refers to, and that have not been stored within
+     * {@code revisions.reclaim-after}.
+     */
+    @Scheduled(initialDelayString = "${storage.sweep-interval:PT6H}",
+            fixedDelayString = "${storage.sweep-interval:PT6H}")
+    public void reclaimUnreferencedContents() {
+        long reclaimed;
+        try (var hashes = contentStore.hashes()) {
+            reclaimed = hashes.filter(this::reclaimIfUnreferenced).count();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not list the blobs in the content store", e);
+            return;
+        }
+        if (reclaimed > 0)
+            log.info("Reclaimed " + reclaimed + " unreferenced blob(s)");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentDeleted(DocumentDeletedEvent event) {
+        var hashes = new HashSet<String>();
+        if (event.getContentHash() != null)
+            hashes.add(event.getContentHash());
+        for (var revision : revisionRepository.findByDocumentId(event.getDocumentId())) {
+            hashes.add(revision.getContentHash());
+            if (revision.getDeltaHash() != null)
+                hashes.add(revision.getDeltaHash());
+        }
+
+        revisionRepository.deleteByDocumentId(event.getDocumentId());
+        hashes.forEach(this::reclaimIfUnreferenced);
+    }
+
+    private boolean reclaimIfUnreferenced(String hash) {
+        try {
+            return hash != null && !documentRepository.existsByContentHash(hash)
+                    && revisionRepository.countReferencesTo(hash) == 0
+                    && contentStore.deleteIfIdle(hash, reclaimAfter);
+        } catch (IOException e) {
+            log.warn("Could not reclaim blob " + hash, e);
+            return false;
+        }
+    }
+
+    private DocumentRevision snapshotOf(Document document, Instant created) {
+        var revision = new DocumentRevision();
+        revision.setDocumentId(document.getId());
+        revision.setVersion(document.getVersion());
+        revision.setLabelId(document.getLabel().getId());
+        revision.setContentHash(document.getContentHash());
+        revision.setSize(document.getSize());
+        revision.setStoredSize(document.getSize());
+        revision.setCreated(created);
+        return revision;
+    }
+
+    private DocumentRevision deltaOf(Document document, DocumentRevision base) throws IOException {
+        var contents = read(document.getContentHash());
+        var delta = Delta.compute(contentsOf(base), contents);
+        if (delta.length >= contents.length)
+            return snapshotOf(document, null);
+
+        var revision = snapshotOf(document, null);
+        revision.setBaseVersion(base.getVersion());
+        revision.setChainLength(base.getChainLength() + 1);
+        revision.setDeltaHash(contentStore.store(new ByteArrayInputStream(delta)).getHash());
+        revision.setStoredSize(delta.length);
+        return revision;
+    }
+
+    private byte[] read(String hash) throws IOException {
+        try (var contents = contentStore.load(hash).getInputStream()) {
+            return contents.readAllBytes();
+        }
+    }
+
+    private static String currentUser() {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+}
@@ -0,0 +1,36 @@
+package com.mayankrastogi.cs587.documentmanager.storage;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Changes to apply to stored contents: byte-range replacements, followed by text to append.
+ */
+@Data
+@NoArgsConstructor
+public class ContentPatch {
+
+    private List<Edit> edits = List.of();
+    private String append;
+
+    /**
+     * Sets the edits, taking {@code null} as no edits.
+     */
+    public void setEdits(List<Edit> edits) {
+        this.edits = edits == null ? List.of() : edits;
+    }
+
+    /**
+     * Replaces {@code length} bytes at {@code offset} of the original contents with the UTF-8 bytes of {@code text}.
+     * A length of 0 inserts, and an empty text deletes.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Edit {
+        private long offset;
+        private long length;
+        private String text = "";
+    }
+}
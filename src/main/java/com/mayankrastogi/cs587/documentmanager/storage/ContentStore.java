@@ -0,0 +1,785 @@
+package com.mayankrastogi.cs587.documentmanager.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed store for document contents on the local file system.
+ * <p>
+ * Every blob is written once under the SHA-256 of its bytes, so identical contents are stored only once no matter how
+ * many documents refer to them. Uploads are streamed through a fixed-size buffer into a temporary file and moved into
+ * place once their hash is known, so the heap never holds a whole document.
+ * <p>
+ * Blobs of at least {@code storage.compression.threshold} bytes are gzipped with the fastest level as they are stored
+ * (the hot tier). Those not read for {@code storage.compression.cold-after} are periodically recompressed with the
+ * densest level into the cold tier. Hashes and lengths always refer to the uncompressed bytes.
+ * <p>
+ * Patching a blob of at least {@code storage.patch.piece-threshold} bytes does not copy it. The inserted text is
+ * stored as blobs of its own, and the patched contents as a piece list: ranges of other blobs that make up its bytes
+ * in order. A piece list never grows beyond {@value #MAX_PIECES} pieces; a patch that would take it further writes
+ * the contents out in full instead. Blobs that a piece list refers to are not deleted while it exists.
+ * <p>
+ * Blobs are only deleted on request, through {@link #deleteIfIdle}, which excludes concurrent stores so that a blob
+ * is never deleted from under an upload that was deduplicated against it. {@link #hashes} lists them for whoever keeps
+ * track of which are still referenced.
+ */
+@Slf4j
+@Component
+public class ContentStore {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String PIECES_SUFFIX = ".pieces";
+    private static final int PIECES_MAGIC = 0x50434531;
+    private static final int MAX_PIECES = 64;
+    // gzip records the uncompressed length modulo 2^32, so larger blobs are always stored as they are
+    private static final long MAX_GZIP_LENGTH = 0xFFFFFFFFL;
+    private static final int MAX_TRACKED_READS = 100_000;
+
+    private enum Tier {
+        HOT(Deflater.BEST_SPEED), COLD(Deflater.BEST_COMPRESSION);
+
+        private final int level;
+
+        Tier(int level) {
+            this.level = level;
+        }
+    }
+
+    private final Path root;
+    private final Path incoming;
+    private final Path cold;
+    private final long compressionThreshold;
+    private final Duration coldAfter;
+    private final long pieceThreshold;
+    /**
+     * How many piece lists refer to each blob that some piece list refers to. Changes under the deletion lock.
+     */
+    private final Map<String, Integer> pieceReferences = new ConcurrentHashMap<>();
+    /**
+     * Last read times of recently read blobs. Times evicted from here are written to the blob's modification time, so
+     * that demotion still sees them.
+     */
+    private final Cache<String, Long> lastRead = Caffeine.newBuilder()
+            .maximumSize(MAX_TRACKED_READS)
+            .removalListener((String hash, Long time, RemovalCause cause) -> {
+                if (cause.wasEvicted())
+                    recordRead(hash, time);
+            })
+            .build();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<Tier, Timer> compressionTimers = new EnumMap<>(Tier.class);
+    private final Map<Tier, DistributionSummary> compressionRatios = new EnumMap<>(Tier.class);
+    private final ReadWriteLock deletionLock = new ReentrantReadWriteLock();
+
+    public ContentStore(@Value("${storage.contents.directory:data/contents}") String directory,
+                        @Value("${storage.compression.threshold:1024}") long compressionThreshold,
+                        @Value("${storage.compression.cold-after:P7D}") Duration coldAfter,
+                        @Value("${storage.patch.piece-threshold:1048576}") long pieceThreshold,
+                        MeterRegistry meterRegistry) throws IOException {
+        this.root = Paths.get(directory).toAbsolutePath();
+        this.incoming = root.resolve("incoming");
+        this.cold = root.resolve("cold");
+        this.compressionThreshold = compressionThreshold;
+        this.coldAfter = coldAfter;
+        this.pieceThreshold = pieceThreshold;
+        Files.createDirectories(incoming);
+        List<Path> pieceLists;
+        try (var paths = Files.walk(root, 2)) {
+            pieceLists = paths.filter(ContentStore::isPieceList).collect(Collectors.toList());
+        }
+        for (var path : pieceLists)
+            readPieces(path).forEach(piece -> pieceReferences.merge(piece.hash, 1, Integer::sum));
+
+        for (var tier : Tier.values()) {
+            var name = tier.name().toLowerCase();
+            compressionTimers.put(tier, Timer
+                    .builder("storage.compression.cpu")
+                    .description("CPU time spent compressing document contents")
+                    .tag("tier", name)
+                    .register(meterRegistry));
+            compressionRatios.put(tier, DistributionSummary
+                    .builder("storage.compression.ratio")
+                    .description("Uncompressed to compressed size of stored document contents")
+                    .tag("tier", name)
+                    .register(meterRegistry));
+        }
+        log.info("Storing document contents in " + root);
+    }
+
+    public StoredContent store(String contents) throws IOException {
+        var bytes = contents == null ? new byte[0] : contents.getBytes(StandardCharsets.UTF_8);
+        return store(new ByteArrayInputStream(bytes));
+    }
+
+    public StoredContent store(InputStream contents) throws IOException {
+        var digest = sha256();
+        var temp = Files.createTempFile(incoming, "upload", ".tmp");
+        try {
+            long length;
+            try (var target = Files.newOutputStream(temp)) {
+                length = copy(contents, Long.MAX_VALUE, target, digest, new byte[BUFFER_SIZE]);
+            }
+            return commit(temp, digest, length);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stores the contents of the blob with the given hash with {@code patch} applied. Large blobs are patched into a
+     * piece list, which writes only the inserted text and the list itself. Otherwise unchanged ranges are streamed
+     * through a fixed-size buffer into a new blob, so only the edits themselves are ever held in memory.
+     *
+     * @throws IllegalArgumentException if an edit or its text is missing, or the edits overlap, are out of order, or
+     *                                  fall outside the contents
+     */
+    public StoredContent patch(String hash, ContentPatch patch) throws IOException {
+        var path = locate(hash);
+        var size = lengthOf(path);
+        long position = 0;
+        for (var edit : patch.getEdits()) {
+            if (edit == null || edit.getText() == null)
+                throw new IllegalArgumentException("Every edit needs an offset, a length and a text.");
+            // Compared without adding offset and length, which could overflow
+            if (edit.getOffset() < position || edit.getLength() < 0 || edit.getOffset() > size
+                    || edit.getLength() > size - edit.getOffset())
+                throw new IllegalArgumentException("Edit at offset " + edit.getOffset() + " overlaps another " +
+                        "edit or lies outside the contents.");
+            position = edit.getOffset() + edit.getLength();
+        }
+
+        if (size >= pieceThreshold) {
+            var pieces = patchPieces(isPieceList(path) ? readPieces(path) : List.of(new Piece(hash, 0, size)), size,
+                    patch);
+            if (pieces.size() <= MAX_PIECES)
+                return commitPieces(pieces);
+        }
+
+        var digest = sha256();
+        var temp = Files.createTempFile(incoming, "patch", ".tmp");
+        try {
+            long length = 0;
+            try (var source = open(path); var target = Files.newOutputStream(temp)) {
+                var buffer = new byte[BUFFER_SIZE];
+                position = 0;
+
+                for (var edit : patch.getEdits()) {
+                    length += copy(source, edit.getOffset() - position, target, digest, buffer);
+                    length += write(edit.getText().getBytes(StandardCharsets.UTF_8), target, digest);
+                    skip(source, edit.getLength(), buffer);
+                    position = edit.getOffset() + edit.getLength();
+                }
+                length += copy(source, size - position, target, digest, buffer);
+
+                if (patch.getAppend() != null)
+                    length += write(patch.getAppend().getBytes(StandardCharsets.UTF_8), target, digest);
+            }
+            return commit(temp, digest, length);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The uncompressed contents of the blob with the given hash. Blobs stored as they are come back as file-backed
+     * resources, which Spring MVC streams through NIO channels; compressed ones are inflated as they are read. Either
+     * way the resource knows its length, so Spring MVC can use it to answer HTTP Range requests.
+     */
+    public Resource load(String hash) {
+        var path = locate(hash);
+        lastRead.put(hash, System.currentTimeMillis());
+        return isCompressed(path) || isPieceList(path) ? new StreamedResource(hash) : new FileSystemResource(path);
+    }
+
+    /**
+     * The gzipped bytes of the blob with the given hash, if it is stored compressed, to be sent to clients that accept
+     * gzip without inflating and deflating it again.
+     */
+    public Optional<Resource> loadCompressed(String hash) {
+        var path = locate(hash);
+        if (!isCompressed(path))
+            return Optional.empty();
+        lastRead.put(hash, System.currentTimeMillis());
+        return Optional.of(new FileSystemResource(path));
+    }
+
+    /**
+     * The hashes of the blobs in the store. A blob that is being moved between tiers may be listed twice. The stream
+     * walks the file system lazily and must be closed.
+     */
+    public Stream<String> hashes() throws IOException {
+        return Stream.concat(blobsIn(root), blobsIn(cold)).map(ContentStore::hashOf);
+    }
+
+    /**
+     * Moves hot blobs that have not been read for {@code storage.compression.cold-after} into the cold tier.
+     */
+    @Scheduled(initialDelayString = "${storage.compression.demotion-interval:PT1H}",
+            fixedDelayString = "${storage.compression.demotion-interval:PT1H}")
+    public void demoteColdContents() {
+        var cutoff = System.currentTimeMillis() - coldAfter.toMillis();
+        var demoted = new AtomicInteger();
+        try (var paths = Files.walk(root, 2)) {
+            paths
+                    .filter(path -> isCompressed(path) && path.getParent().getParent().equals(root)
+                            && path.getParent().getFileName().toString().length() == 2)
+                    .filter(path -> lastReadOf(path) < cutoff)
+                    .forEach(path -> {
+                        if (demote(path, cutoff))
+                            demoted.incrementAndGet();
+                    });
+        } catch (IOException e) {
+            log.warn("Could not scan " + root + " for cold contents", e);
+        }
+        if (demoted.get() > 0)
+            log.info("Moved " + demoted.get() + " blob(s) into the cold tier");
+    }
+
+    /**
+     * Deletes the blob with the given hash from every tier, unless it was stored, or an identical blob was stored
+     * again, within {@code idle}.
+     *
+     * @return whether the blob was deleted
+     */
+    public boolean deleteIfIdle(String hash, Duration idle) throws IOException {
+        deletionLock.writeLock().lock();
+        try {
+            var path = locate(hash);
+            if (!Files.exists(path) || Files.getLastModifiedTime(path).toMillis() > System.currentTimeMillis() - idle.toMillis()
+                    || pieceReferences.containsKey(hash))
+                return false;
+            var pieces = isPieceList(path) ? readPieces(path) : List.<Piece>of();
+            Files.deleteIfExists(compressedPathOf(hash));
+            Files.deleteIfExists(pathOf(hash));
+            Files.deleteIfExists(piecesPathOf(hash));
+            Files.deleteIfExists(coldPathOf(hash));
+            lastRead.invalidate(hash);
+            // The blobs this one was made of are left for whoever tracks references to find unreferenced
+            for (var piece : pieces)
+                pieceReferences.computeIfPresent(piece.hash, (pieceHash, count) -> count > 1 ? count - 1 : null);
+            return true;
+        } finally {
+            deletionLock.writeLock().unlock();
+        }
+    }
+
+    private boolean demote(Path path, long cutoff) {
+        var hash = hashOf(path);
+        deletionLock.readLock().lock();
+        try {
+            try (var source = open(path)) {
+                if (!compress(source, coldPathOf(hash), lengthOf(path), Tier.COLD))
+                    return false;
+            }
+            // A read that raced with the recompression keeps the hot copy around until the next run
+            if (lastReadOf(path) >= cutoff) {
+                Files.deleteIfExists(coldPathOf(hash));
+                return false;
+            }
+            Files.deleteIfExists(path);
+            lastRead.invalidate(hash);
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not move " + hash + " into the cold tier", e);
+            return false;
+        } finally {
+            deletionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a fully written temporary file under its hash, compressing it on the way if it is large enough, unless a
+     * blob with that hash already exists. An existing blob is touched instead, so that it counts as freshly stored for
+     * {@link #deleteIfIdle}.
+     */
+    private StoredContent commit(Path temp, MessageDigest digest, long length) throws IOException {
+        var hash = toHex(digest.digest());
+        deletionLock.readLock().lock();
+        try {
+            moveIntoPlace(temp, hash, length);
+        } finally {
+            deletionLock.readLock().unlock();
+        }
+        return new StoredContent(hash, length);
+    }
+
+    /**
+     * The pieces of {@code base}, which is {@code size} bytes long, with {@code patch} applied. Inserted text is
+     * stored as a blob of its own, unless the result would have too many pieces to be kept as a piece list anyway.
+     */
+    private List<Piece> patchPieces(List<Piece> base, long size, ContentPatch patch) throws IOException {
+        var pieces = new ArrayList<Piece>();
+        var inserted = new ArrayList<byte[]>();
+        long position = 0;
+        for (var edit : patch.getEdits()) {
+            slice(base, position, edit.getOffset(), pieces);
+            var text = edit.getText().getBytes(StandardCharsets.UTF_8);
+            if (text.length > 0) {
+                pieces.add(null);
+                inserted.add(text);
+            }
+            position = edit.getOffset() + edit.getLength();
+        }
+        slice(base, position, size, pieces);
+        if (patch.getAppend() != null && !patch.getAppend().isEmpty()) {
+            pieces.add(null);
+            inserted.add(patch.getAppend().getBytes(StandardCharsets.UTF_8));
+        }
+        if (pieces.size() > MAX_PIECES)
+            return pieces;
+
+        var texts = inserted.iterator();
+        for (var i = 0; i < pieces.size(); i++) {
+            if (pieces.get(i) == null) {
+                var text = store(new ByteArrayInputStream(texts.next()));
+                pieces.set(i, new Piece(text.getHash(), 0, text.getLength()));
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * Adds the pieces that make up the bytes of {@code pieces} from {@code from} to {@code to} to {@code target},
+     * joining them onto the last piece of {@code target} where they continue it.
+     */
+    private static void slice(List<Piece> pieces, long from, long to, List<Piece> target) {
+        long start = 0;
+        for (var piece : pieces) {
+            var end = start + piece.length;
+            if (end > from && start < to && from < to) {
+                var skipped = Math.max(from, start) - start;
+                var slice = new Piece(piece.hash, piece.offset + skipped, Math.min(to, end) - start - skipped);
+                var last = target.isEmpty() ? null : target.get(target.size() - 1);
+                if (last != null && last.hash.equals(slice.hash) && last.offset + last.length == slice.offset)
+                    target.set(target.size() - 1, new Piece(last.hash, last.offset, last.length + slice.length));
+                else
+                    target.add(slice);
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Stores a piece list, after hashing the bytes it is made of, unless a blob with that hash already exists.
+     */
+    private StoredContent commitPieces(List<Piece> pieces) throws IOException {
+        var digest = sha256();
+        long length;
+        deletionLock.readLock().lock();
+        try {
+            try (var source = new PieceInputStream(pieces.iterator())) {
+                length = copy(source, Long.MAX_VALUE, OutputStream.nullOutputStream(), digest, new byte[BUFFER_SIZE]);
+            }
+            var hash = toHex(digest.digest());
+            if (exists(hash)) {
+                Files.setLastModifiedTime(locate(hash), FileTime.fromMillis(System.currentTimeMillis()));
+                return new StoredContent(hash, length);
+            }
+
+            var temp = Files.createTempFile(incoming, "pieces", ".tmp");
+            try {
+                try (var out = new DataOutputStream(Files.newOutputStream(temp))) {
+                    out.writeInt(PIECES_MAGIC);
+                    out.writeLong(length);
+                    out.writeInt(pieces.size());
+                    for (var piece : pieces) {
+                        out.writeUTF(piece.hash);
+                        out.writeLong(piece.offset);
+                        out.writeLong(piece.length);
+                    }
+                }
+                var path = piecesPathOf(hash);
+                Files.createDirectories(path.getParent());
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            for (var piece : pieces)
+                pieceReferences.merge(piece.hash, 1, Integer::sum);
+            return new StoredContent(hash, length);
+        } finally {
+            deletionLock.readLock().unlock();
+        }
+    }
+
+    private static List<Piece> readPieces(Path path) throws IOException {
+        try (var in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != PIECES_MAGIC)
+                throw new IOException(path + " is not a piece list.");
+            in.readLong();
+            var count = in.readInt();
+            var pieces = new ArrayList<Piece>(count);
+            for (var i = 0; i < count; i++)
+                pieces.add(new Piece(in.readUTF(), in.readLong(), in.readLong()));
+            return pieces;
+        }
+    }
+
+    private void moveIntoPlace(Path temp, String hash, long length) throws IOException {
+        if (exists(hash)) {
+            Files.setLastModifiedTime(locate(hash), FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            var path = pathOf(hash);
+            Files.createDirectories(path.getParent());
+
+            var compressed = false;
+            if (length >= compressionThreshold && length <= MAX_GZIP_LENGTH) {
+                try (var source = Files.newInputStream(temp)) {
+                    compressed = compress(source, compressedPathOf(hash), length, Tier.HOT);
+                }
+            }
+            if (!compressed)
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Gzips {@code source} into {@code target}, unless that would not make it any smaller.
+     */
+    private boolean compress(InputStream source, Path target, long length, Tier tier) throws IOException {
+        var temp = Files.createTempFile(incoming, "compress", ".tmp");
+        try {
+            var start = cpuTime();
+            try (var out = new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE) {
+                {
+                    def.setLevel(tier.level);
+                }
+            }) {
+                source.transferTo(out);
+            }
+            compressionTimers.get(tier).record(cpuTime() - start, TimeUnit.NANOSECONDS);
+
+            var compressedLength = Files.size(temp);
+            if (compressedLength >= length)
+                return false;
+            compressionRatios.get(tier).record((double) length / compressedLength);
+
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private boolean exists(String hash) {
+        return Files.exists(compressedPathOf(hash)) || Files.exists(pathOf(hash)) || Files.exists(piecesPathOf(hash))
+                || Files.exists(coldPathOf(hash));
+    }
+
+    /**
+     * Where the blob with the given hash currently lives, checking the hot tier first.
+     */
+    private Path locate(String hash) {
+        var compressed = compressedPathOf(hash);
+        if (Files.exists(compressed))
+            return compressed;
+        var path = pathOf(hash);
+        if (Files.exists(path))
+            return path;
+        var piecesPath = piecesPathOf(hash);
+        if (Files.exists(piecesPath))
+            return piecesPath;
+        var coldPath = coldPathOf(hash);
+        return Files.exists(coldPath) ? coldPath : path;
+    }
+
+    /**
+     * The blob files of a tier, which sit one directory down, in directories named after the first two digits of their
+     * hash.
+     */
+    private static Stream<Path> blobsIn(Path tier) throws IOException {
+        if (!Files.isDirectory(tier))
+            return Stream.empty();
+        return Files.walk(tier, 2)
+                .filter(path -> path.getNameCount() == tier.getNameCount() + 2 && Files.isRegularFile(path)
+                        && HASH_PATTERN.matcher(hashOf(path)).matches());
+    }
+
+    private InputStream open(Path path) throws IOException {
+        if (isPieceList(path))
+            return new PieceInputStream(readPieces(path).iterator());
+        var in = Files.newInputStream(path);
+        return isCompressed(path) ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    /**
+     * The uncompressed length of a blob, which for compressed blobs is read from the gzip trailer, and for piece lists
+     * from their header.
+     */
+    private static long lengthOf(Path path) throws IOException {
+        if (isPieceList(path)) {
+            try (var in = new DataInputStream(Files.newInputStream(path))) {
+                in.readInt();
+                return in.readLong();
+            }
+        }
+        if (!isCompressed(path))
+            return Files.size(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(trailer, channel.size() - 4);
+            return Integer.toUnsignedLong(trailer.getInt(0));
+        }
+    }
+
+    /**
+     * Moves the modification time of a blob forward to {@code time}, if it is older.
+     */
+    private void recordRead(String hash, long time) {
+        try {
+            var path = locate(hash);
+            if (Files.exists(path) && Files.getLastModifiedTime(path).toMillis() < time)
+                Files.setLastModifiedTime(path, FileTime.fromMillis(time));
+        } catch (IOException e) {
+            log.debug("Could not record the last read of " + hash, e);
+        }
+    }
+
+    private long lastReadOf(Path path) {
+        var read = lastRead.getIfPresent(hashOf(path));
+        if (read != null)
+            return read;
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static long copy(InputStream source, long count, OutputStream target, MessageDigest digest, byte[] buffer)
+            throws IOException {
+        long copied = 0;
+        while (copied < count) {
+            var read = source.read(buffer, 0, (int) Math.min(buffer.length, count - copied));
+            if (read < 0)
+                break;
+            digest.update(buffer, 0, read);
+            target.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    private static long write(byte[] bytes, OutputStream target, MessageDigest digest) throws IOException {
+        digest.update(bytes);
+        target.write(bytes);
+        return bytes.length;
+    }
+
+    private static void skip(InputStream source, long count, byte[] buffer) throws IOException {
+        while (count > 0) {
+            var read = source.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (read < 0)
+                break;
+            count -= read;
+        }
+    }
+
+    private static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    private static boolean isPieceList(Path path) {
+        return path.getFileName().toString().endsWith(PIECES_SUFFIX);
+    }
+
+    private static String hashOf(Path path) {
+        var name = path.getFileName().toString();
+        if (isCompressed(path))
+            return name.substring(0, name.length() - GZIP_SUFFIX.length());
+        return isPieceList(path) ? name.substring(0, name.length() - PIECES_SUFFIX.length()) : name;
+    }
+
+    private Path pathOf(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches())
+            throw new IllegalArgumentException("Invalid content hash `" + hash + "`.");
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path compressedPathOf(String hash) {
+        return pathOf(hash).resolveSibling(hash + GZIP_SUFFIX);
+    }
+
+    private Path piecesPathOf(String hash) {
+        return pathOf(hash).resolveSibling(hash + PIECES_SUFFIX);
+    }
+
+    private Path coldPathOf(String hash) {
+        return cold.resolve(root.relativize(pathOf(hash))).resolveSibling(hash + GZIP_SUFFIX);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        var hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * A range of another blob, which makes up part of the bytes of a piece list.
+     */
+    private static class Piece {
+
+        private final String hash;
+        private final long offset;
+        private final long length;
+
+        private Piece(String hash, long offset, long length) {
+            this.hash = hash;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The bytes of a sequence of pieces. Each piece is opened only when the one before it has been read.
+     */
+    private class PieceInputStream extends InputStream {
+
+        private final Iterator<Piece> pieces;
+        private InputStream current = InputStream.nullInputStream();
+        private long remaining;
+
+        private PieceInputStream(Iterator<Piece> pieces) {
+            this.pieces = pieces;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            while (remaining == 0) {
+                current.close();
+                if (!pieces.hasNext())
+                    return -1;
+                openNext();
+            }
+            var read = current.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0)
+                throw new EOFException("A piece of a piece list ends early.");
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+        }
+
+        private void openNext() throws IOException {
+            var piece = pieces.next();
+            var path = locate(piece.hash);
+            if (isCompressed(path) || isPieceList(path)) {
+                current = open(path);
+                ContentStore.skip(current, piece.offset, new byte[BUFFER_SIZE]);
+            } else {
+                current = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ).position(piece.offset));
+            }
+            remaining = piece.length;
+        }
+    }
+
+    /**
+     * A compressed blob, inflated as it is read, or a piece list, assembled as it is read. The blob is located again
+     * on every read, so a resource obtained before the blob moved into the cold tier keeps working.
+     */
+    private class StreamedResource extends AbstractResource {
+
+        private final String hash;
+
+        private StreamedResource(String hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return open(locate(hash));
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return lengthOf(locate(hash));
+        }
+
+        @Override
+        public String getDescription() {
+            return "Stored contents [" + hash + "]";
+        }
+    }
+}
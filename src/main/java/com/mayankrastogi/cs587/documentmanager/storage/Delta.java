@@ -0,0 +1,328 @@
+package com.mayankrastogi.cs587.documentmanager.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary deltas between two versions of some contents, as a sequence of copies of ranges of the base version and
+ * literal insertions.
+ * <p>
+ * Matches are found the way rsync and xdelta find them: the base is cut into fixed-size blocks that are indexed by
+ * a rolling hash, the target is scanned with the same hash, and every verified block match is extended in both
+ * directions. A delta is encoded as the target length followed by its operations, all as varints: {@code length << 1}
+ * then the base offset for a copy, {@code length << 1 | 1} then the bytes for an insertion.
+ */
+public final class Delta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int MULTIPLIER = 0x01000193;
+    private static final int OUTGOING_FACTOR = power(MULTIPLIER, BLOCK_SIZE - 1);
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    private Delta() {
+    }
+
+    /**
+     * A delta that turns {@code base} into {@code target} when {@link #apply applied} to it.
+     */
+    public static byte[] compute(byte[] base, byte[] target) {
+        var out = new ByteArrayOutputStream(64);
+        writeVarint(out, target.length);
+
+        var prefix = commonPrefix(base, target);
+        var suffix = commonSuffix(base, target, prefix);
+        if (prefix > 0)
+            writeCopy(out, 0, prefix);
+
+        var end = target.length - suffix;
+        var index = new BlockIndex(base);
+        var literalStart = prefix;
+        var position = prefix;
+        var hash = position + BLOCK_SIZE <= end ? hashOf(target, position) : 0;
+
+        while (position + BLOCK_SIZE <= end) {
+            var offset = index.find(hash, target, position);
+            if (offset >= 0) {
+                var length = BLOCK_SIZE;
+                while (position + length < end && offset + length < base.length
+                        && base[offset + length] == target[position + length])
+                    length++;
+                while (position > literalStart && offset > 0 && base[offset - 1] == target[position - 1]) {
+                    position--;
+                    offset--;
+                    length++;
+                }
+                if (position > literalStart)
+                    writeInsert(out, target, literalStart, position - literalStart);
+                writeCopy(out, offset, length);
+
+                position += length;
+                literalStart = position;
+                if (position + BLOCK_SIZE <= end)
+                    hash = hashOf(target, position);
+            } else {
+                if (position + BLOCK_SIZE < end)
+                    hash = roll(hash, target[position], target[position + BLOCK_SIZE]);
+                position++;
+            }
+        }
+
+        if (end > literalStart)
+            writeInsert(out, target, literalStart, end - literalStart);
+        if (suffix > 0)
+            writeCopy(out, base.length - suffix, suffix);
+        return out.toByteArray();
+    }
+
+    /**
+     * The target version that {@code delta} was {@link #compute computed} for, given its base.
+     *
+     * @throws IllegalArgumentException if the delta is corrupt or was computed against another base
+     */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        var reader = new Reader(delta);
+        var target = new byte[checkedLength(reader.readVarint())];
+        var position = 0;
+
+        while (reader.hasMore()) {
+            var operation = reader.readVarint();
+            var length = checkedLength(operation >>> 1);
+            if (position + length > target.length)
+                throw new IllegalArgumentException("Delta produces more bytes than its target length.");
+
+            if ((operation & 1) == COPY) {
+                var offset = reader.readVarint();
+                if (offset < 0 || offset + length > base.length)
+                    throw new IllegalArgumentException("Delta copies bytes from outside its base.");
+                System.arraycopy(base, (int) offset, target, position, length);
+            } else {
+                reader.readBytes(target, position, length);
+            }
+            position += length;
+        }
+
+        if (position != target.length)
+            throw new IllegalArgumentException("Delta produces fewer bytes than its target length.");
+        return target;
+    }
+
+    /**
+     * The edits that turn {@code base} into {@code target}, in the form accepted by {@link ContentStore#patch}. Edit
+     * boundaries are moved out of multi-byte UTF-8 sequences, so the text of every edit is whole characters as long
+     * as both versions are valid UTF-8.
+     */
+    public static ContentPatch diff(byte[] base, byte[] target) {
+        // Copies that move forward through the base are kept as unchanged ranges; everything between them is an edit
+        var ranges = new ArrayList<int[]>();
+        var reader = new Reader(compute(base, target));
+        reader.readVarint();
+        int baseCursor = 0, targetCursor = 0, editTargetStart = 0;
+
+        while (reader.hasMore()) {
+            var operation = reader.readVarint();
+            var length = (int) (operation >>> 1);
+            if ((operation & 1) == COPY) {
+                var offset = (int) reader.readVarint();
+                if (offset >= baseCursor) {
+                    if (offset > baseCursor || targetCursor > editTargetStart)
+                        ranges.add(new int[]{baseCursor, offset, editTargetStart, targetCursor});
+                    baseCursor = offset + length;
+                    editTargetStart = targetCursor + length;
+                }
+            } else {
+                reader.skip(length);
+            }
+            targetCursor += length;
+        }
+        if (base.length > baseCursor || target.length > editTargetStart)
+            ranges.add(new int[]{baseCursor, base.length, editTargetStart, target.length});
+
+        var patch = new ContentPatch();
+        patch.setEdits(toEdits(alignToCharacters(ranges, base, target), target));
+        return patch;
+    }
+
+    /**
+     * Widens every range until none of its ends falls inside a multi-byte character, merging ranges that meet. The
+     * bytes outside the ranges are the same in both versions, so both sides can be widened in step.
+     */
+    private static List<int[]> alignToCharacters(List<int[]> ranges, byte[] base, byte[] target) {
+        var aligned = new ArrayList<int[]>(ranges.size());
+        for (var i = 0; i < ranges.size(); i++) {
+            var range = ranges.get(i);
+            var floor = aligned.isEmpty() ? 0 : aligned.get(aligned.size() - 1)[1];
+            var ceiling = i + 1 < ranges.size() ? ranges.get(i + 1)[0] : base.length;
+
+            while (range[0] > floor && (isContinuation(base, range[0]) || isContinuation(target, range[2]))) {
+                range[0]--;
+                range[2]--;
+            }
+            while (range[1] < ceiling && (isContinuation(base, range[1]) || isContinuation(target, range[3]))) {
+                range[1]++;
+                range[3]++;
+            }
+
+            if (!aligned.isEmpty() && range[0] <= floor) {
+                var last = aligned.get(aligned.size() - 1);
+                last[1] = range[1];
+                last[3] = range[3];
+            } else {
+                aligned.add(range);
+            }
+        }
+        return aligned;
+    }
+
+    private static List<ContentPatch.Edit> toEdits(List<int[]> ranges, byte[] target) {
+        var edits = new ArrayList<ContentPatch.Edit>(ranges.size());
+        for (var range : ranges) {
+            var edit = new ContentPatch.Edit();
+            edit.setOffset(range[0]);
+            edit.setLength(range[1] - range[0]);
+            edit.setText(new String(target, range[2], range[3] - range[2], StandardCharsets.UTF_8));
+            edits.add(edit);
+        }
+        return edits;
+    }
+
+    private static boolean isContinuation(byte[] bytes, int index) {
+        return index < bytes.length && (bytes[index] & 0xC0) == 0x80;
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b) {
+        var mismatch = Arrays.mismatch(a, b);
+        return mismatch < 0 ? a.length : mismatch;
+    }
+
+    private static int commonSuffix(byte[] a, byte[] b, int prefix) {
+        var max = Math.min(a.length, b.length) - prefix;
+        var length = 0;
+        while (length < max && a[a.length - 1 - length] == b[b.length - 1 - length])
+            length++;
+        return length;
+    }
+
+    private static int hashOf(byte[] bytes, int offset) {
+        var hash = 0;
+        for (var i = 0; i < BLOCK_SIZE; i++)
+            hash = hash * MULTIPLIER + (bytes[offset + i] & 0xFF);
+        return hash;
+    }
+
+    private static int roll(int hash, byte outgoing, byte incoming) {
+        return (hash - (outgoing & 0xFF) * OUTGOING_FACTOR) * MULTIPLIER + (incoming & 0xFF);
+    }
+
+    private static int power(int base, int exponent) {
+        var result = 1;
+        for (var i = 0; i < exponent; i++)
+            result *= base;
+        return result;
+    }
+
+    private static int checkedLength(long length) {
+        if (length < 0 || length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Delta has an invalid length.");
+        return (int) length;
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, int offset, int length) {
+        writeVarint(out, (long) length << 1 | COPY);
+        writeVarint(out, offset);
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] bytes, int offset, int length) {
+        writeVarint(out, (long) length << 1 | INSERT);
+        out.write(bytes, offset, length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Offsets of the aligned blocks of the base in an open-addressed table keyed by their hash. When blocks collide,
+     * the first one wins.
+     */
+    private static class BlockIndex {
+        private final byte[] base;
+        private final int[] offsets;
+        private final int mask;
+
+        BlockIndex(byte[] base) {
+            this.base = base;
+            var blocks = base.length / BLOCK_SIZE;
+            var capacity = Integer.highestOneBit(Math.max(1, blocks) * 2 - 1) << 1;
+            this.offsets = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(offsets, -1);
+
+            for (var block = 0; block < blocks; block++) {
+                var offset = block * BLOCK_SIZE;
+                var slot = slotOf(hashOf(base, offset));
+                if (offsets[slot] < 0)
+                    offsets[slot] = offset;
+            }
+        }
+
+        /**
+         * The offset of a block of the base equal to the {@link #BLOCK_SIZE} bytes of {@code target} at
+         * {@code position}, whose hash is {@code hash}, or -1.
+         */
+        int find(int hash, byte[] target, int position) {
+            var offset = offsets[slotOf(hash)];
+            if (offset < 0 || !Arrays.equals(base, offset, offset + BLOCK_SIZE, target, position, position + BLOCK_SIZE))
+                return -1;
+            return offset;
+        }
+
+        private int slotOf(int hash) {
+            return (hash ^ hash >>> 16) & mask;
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean hasMore() {
+            return position < bytes.length;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (var shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length)
+                    throw new IllegalArgumentException("Delta is truncated.");
+                var b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Delta has a malformed varint.");
+        }
+
+        void readBytes(byte[] target, int offset, int length) {
+            if (position + length > bytes.length)
+                throw new IllegalArgumentException("Delta is truncated.");
+            System.arraycopy(bytes, position, target, offset, length);
+            position += length;
+        }
+
+        void skip(int length) {
+            position += length;
+        }
+    }
+}
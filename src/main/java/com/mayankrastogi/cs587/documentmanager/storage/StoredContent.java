@@ -0,0 +1,12 @@
+package com.mayankrastogi.cs587.documentmanager.storage;
+
+import lombok.Value;
+
+/**
+ * Reference to a blob in the {@link ContentStore}: the SHA-256 of its bytes and its length in bytes.
+ */
+@Value
+public class StoredContent {
+    String hash;
+    long length;
+}
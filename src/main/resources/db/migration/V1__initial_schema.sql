@@ -0,0 +1,67 @@
+-- Schema of the entities as of the introduction of Flyway, matching what Hibernate generates for them.
+
+create sequence hibernate_sequence start with 1 increment by 1;
+
+create table label (
+    id   bigint       not null,
+    name varchar(255),
+    rank integer      not null,
+    primary key (id)
+);
+
+create table permission (
+    id varchar(255) not null,
+    primary key (id)
+);
+
+create table role (
+    id varchar(255) not null,
+    primary key (id)
+);
+
+create table role_permissions (
+    role_id        varchar(255) not null,
+    permissions_id varchar(255) not null,
+    constraint fk_role_permissions_role foreign key (role_id) references role (id),
+    constraint fk_role_permissions_permission foreign key (permissions_id) references permission (id)
+);
+
+create table role_parents (
+    role_id    varchar(255) not null,
+    parents_id varchar(255) not null,
+    constraint fk_role_parents_role foreign key (role_id) references role (id),
+    constraint fk_role_parents_parent foreign key (parents_id) references role (id)
+);
+
+create table user (
+    id         bigint       not null,
+    email      varchar(255),
+    first_name varchar(255),
+    last_name  varchar(255),
+    password   varchar(255),
+    primary key (id)
+);
+
+create unique index ux_user_email on user (email);
+
+create table user_roles (
+    user_id  bigint       not null,
+    roles_id varchar(255) not null,
+    constraint fk_user_roles_user foreign key (user_id) references user (id),
+    constraint fk_user_roles_role foreign key (roles_id) references role (id)
+);
+
+create table document (
+    id            bigint       not null,
+    content_hash  varchar(64),
+    label_id      bigint       not null,
+    last_modified timestamp,
+    name          varchar(255),
+    size          bigint       not null,
+    version       bigint       not null,
+    primary key (id),
+    constraint fk_document_label foreign key (label_id) references label (id)
+);
+
+create index ix_document_name on document (name);
+create index ix_document_label_id on document (label_id);
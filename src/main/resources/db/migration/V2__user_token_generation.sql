@@ -0,0 +1 @@
+alter table user add column token_generation bigint default 0 not null;
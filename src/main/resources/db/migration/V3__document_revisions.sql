@@ -0,0 +1,19 @@
+create table document_revision (
+    id                bigint       not null,
+    author            varchar(255),
+    base_version      bigint,
+    chain_length      integer      not null,
+    content_hash      varchar(64),
+    contents_released boolean      not null,
+    created           timestamp,
+    delta_hash        varchar(64),
+    document_id       bigint       not null,
+    label_id          bigint       not null,
+    size              bigint       not null,
+    stored_size       bigint       not null,
+    version           bigint       not null,
+    primary key (id)
+);
+
+create unique index ux_document_revision on document_revision (document_id, version);
+create index ix_document_content_hash on document (content_hash);
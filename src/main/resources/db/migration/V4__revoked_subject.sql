@@ -0,0 +1,6 @@
+create table revoked_subject (
+    subject          varchar(255) not null,
+    not_before       bigint       not null,
+    token_generation bigint       not null,
+    primary key (subject)
+);
@@ -0,0 +1,2 @@
+create index ix_document_revision_content_hash on document_revision (content_hash);
+create index ix_document_revision_delta_hash on document_revision (delta_hash);
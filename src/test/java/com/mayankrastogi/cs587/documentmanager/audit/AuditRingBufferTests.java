@@ -0,0 +1,103 @@
+package com.mayankrastogi.cs587.documentmanager.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditRingBufferTests {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertThat(new AuditRingBuffer<Integer>(1000).capacity()).isEqualTo(1024);
+        assertThat(new AuditRingBuffer<Integer>(1024).capacity()).isEqualTo(1024);
+    }
+
+    @Test
+    void offerFailsWhenFullAndSucceedsOnceThereIsRoom() {
+        var buffer = new AuditRingBuffer<Integer>(4);
+        for (var i = 0; i < 4; i++)
+            assertThat(buffer.offer(i)).isTrue();
+
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        assertThat(buffer.poll()).isEqualTo(0);
+        assertThat(buffer.offer(4)).isTrue();
+        assertThat(buffer.offer(5)).isFalse();
+    }
+
+    @Test
+    void drainToMovesTheOldestElementsInOrder() {
+        var buffer = new AuditRingBuffer<Integer>(8);
+        // Wrap around the end of the slots a few times
+        for (var round = 0; round < 3; round++) {
+            for (var i = 0; i < 6; i++)
+                buffer.offer(round * 6 + i);
+
+            var drained = new ArrayList<Integer>();
+            assertThat(buffer.drainTo(drained, 4)).isEqualTo(4);
+            assertThat(buffer.drainTo(drained, 4)).isEqualTo(2);
+            assertThat(drained).containsExactly(round * 6, round * 6 + 1, round * 6 + 2, round * 6 + 3,
+                    round * 6 + 4, round * 6 + 5);
+        }
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.drainTo(new ArrayList<>(), 4)).isZero();
+    }
+
+    @Test
+    void concurrentProducersLoseAndDuplicateNothing() throws Exception {
+        var producers = 8;
+        var perProducer = 100_000;
+        var buffer = new AuditRingBuffer<Long>(1024);
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(producers);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (var p = 0; p < producers; p++) {
+                var producer = p;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (long i = 0; i < perProducer; i++) {
+                        // Encodes the producer in the high bits so the consumer can check per-producer order
+                        var element = (long) producer << 32 | i;
+                        while (!buffer.offer(element))
+                            Thread.onSpinWait();
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            var next = new long[producers];
+            var received = 0L;
+            var batch = new ArrayList<Long>(256);
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (received < (long) producers * perProducer && System.nanoTime() < deadline) {
+                buffer.drainTo(batch, 256);
+                for (var element : batch) {
+                    var producer = (int) (element >>> 32);
+                    // Each producer's elements arrive exactly once and in the order it offered them
+                    assertThat(element & 0xFFFFFFFFL).isEqualTo(next[producer]);
+                    next[producer]++;
+                }
+                received += batch.size();
+                batch.clear();
+            }
+
+            for (var future : futures)
+                future.get(10, TimeUnit.SECONDS);
+            assertThat(received).isEqualTo((long) producers * perProducer);
+            assertThat(next).containsOnly(perProducer);
+            assertThat(buffer.poll()).isNull();
+            assertThat(buffer.size()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.mayankrastogi.cs587.documentmanager.controllers;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Role;
+import com.mayankrastogi.cs587.documentmanager.entities.User;
+import com.mayankrastogi.cs587.documentmanager.repositories.RoleRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@WithMockUser(authorities = "manageUsers")
+class UserControllerTests {
+
+    /**
+     * One statement for the page of users, plus one batch per level of the role graph (roles of the users, their
+     * permissions, their parents, ...). Loading one collection per user or per role would need far more.
+     */
+    private static final long MAX_STATEMENTS_PER_REQUEST = 10;
+
+    /**
+     * Users added on top of the sample ones, so that a page holds several times more users than the bound above and
+     * loading anything per user cannot stay under it.
+     */
+    private static final int SEEDED_USERS = 5 * (int) MAX_STATEMENTS_PER_REQUEST;
+    private static final int PAGE_SIZE = 4 * (int) MAX_STATEMENTS_PER_REQUEST;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private Statistics statistics;
+    private final List<User> seededUsers = new ArrayList<>();
+
+    @BeforeEach
+    void seedUsersAndClearStatistics() {
+        var roles = new ArrayList<Role>();
+        roleRepository.findAll().forEach(roles::add);
+        for (var i = 0; i < SEEDED_USERS; i++) {
+            // Spread over every role, so that the page refers to many roles and not just a few
+            var user = new User("Seeded", "User " + i, "seeded.user." + i + "@email.com", "password",
+                    roles.get(i % roles.size()), roles.get((i + 1) % roles.size()));
+            seededUsers.add(userRepository.save(user));
+        }
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void removeSeededUsers() {
+        userRepository.deleteAll(seededUsers);
+        seededUsers.clear();
+    }
+
+    @Test
+    void listingUsersRunsABoundedNumberOfStatements() throws Exception {
+        mockMvc.perform(get("/users/").param("limit", String.valueOf(PAGE_SIZE)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(PAGE_SIZE)));
+
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(MAX_STATEMENTS_PER_REQUEST);
+    }
+
+    @Test
+    void gettingUserByEmailRunsABoundedNumberOfStatements() throws Exception {
+        mockMvc.perform(get("/users/email/secret.user@email.com")).andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(MAX_STATEMENTS_PER_REQUEST);
+    }
+}
@@ -0,0 +1,223 @@
+package com.mayankrastogi.cs587.documentmanager.search;
+
+import com.mayankrastogi.cs587.documentmanager.entities.Document;
+import com.mayankrastogi.cs587.documentmanager.entities.Label;
+import com.mayankrastogi.cs587.documentmanager.repositories.DocumentRepository;
+import com.mayankrastogi.cs587.documentmanager.services.LabelLattice;
+import com.mayankrastogi.cs587.documentmanager.storage.ContentStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentIndexTests {
+
+    private final Label unclassified = label(1, "Unclassified");
+    private final Label secret = label(2, "Secret");
+
+    @TempDir
+    Path directory;
+
+    private DocumentRepository documentRepository;
+    private ContentStore contentStore;
+    private LabelLattice labelLattice;
+    private DocumentIndex documentIndex;
+
+    @BeforeEach
+    void setUp() {
+        documentRepository = mock(DocumentRepository.class);
+        contentStore = mock(ContentStore.class);
+        labelLattice = mock(LabelLattice.class);
+        for (var label : List.of(unclassified, secret)) {
+            when(labelLattice.byId(label.getId())).thenReturn(Optional.of(label));
+            when(labelLattice.byName(label.getName())).thenReturn(Optional.of(label));
+        }
+        documentIndex = documentIndex("");
+    }
+
+    @Test
+    void findsOnlyDocumentsInReadableLabels() throws IOException {
+        documentIndex.index(document(1, 0, "Plans", unclassified, "the launch plans"));
+        documentIndex.index(document(2, 0, "Secret plans", secret, "the secret launch plans"));
+
+        assertThat(ids("launch", "Unclassified")).containsExactly(1L);
+        assertThat(ids("launch", "Unclassified", "Secret")).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(ids("secret", "Unclassified")).isEmpty();
+    }
+
+    @Test
+    void movesDocumentsBetweenLabelsWithoutReadingTheirContentsAgain() throws IOException {
+        var document = document(1, 0, "Plans", unclassified, "the launch plans");
+        documentIndex.index(document);
+        document.setLabel(secret);
+        document.setVersion(1);
+        documentIndex.index(document);
+
+        assertThat(ids("launch", "Unclassified")).isEmpty();
+        assertThat(ids("launch", "Secret")).containsExactly(1L);
+        verify(contentStore, times(1)).load(document.getContentHash());
+    }
+
+    @Test
+    void findsDocumentsUnderTheNewNameOfTheirLabel() throws IOException {
+        documentIndex.index(document(1, 0, "Plans", secret, "the launch plans"));
+
+        var renamed = label(secret.getId(), "Top Secret");
+        when(labelLattice.byId(secret.getId())).thenReturn(Optional.of(renamed));
+        when(labelLattice.byName("Top Secret")).thenReturn(Optional.of(renamed));
+        when(labelLattice.byName("Secret")).thenReturn(Optional.empty());
+
+        var hits = documentIndex.search("launch", Set.of("Top Secret"), 0, 10);
+        assertThat(hits).extracting(SearchHit::getLabel).containsExactly("Top Secret");
+        assertThat(ids("launch", "Secret")).isEmpty();
+    }
+
+    @Test
+    void ignoresOlderVersionsIndexedLate() throws IOException {
+        documentIndex.index(document(1, 2, "Plans", unclassified, "the new plans"));
+        documentIndex.index(document(1, 1, "Plans", unclassified, "the old plans"));
+
+        assertThat(ids("new", "Unclassified")).containsExactly(1L);
+        assertThat(ids("old", "Unclassified")).isEmpty();
+    }
+
+    @Test
+    void rejectsOffsetsPastTheDeepestPage() throws IOException {
+        documentIndex.index(document(1, 0, "Plans", unclassified, "the launch plans"));
+
+        assertThatThrownBy(() -> documentIndex.search("launch", Set.of("Unclassified"), -1, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> documentIndex.search("launch", Set.of("Unclassified"), DocumentIndex.MAX_OFFSET + 1, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(documentIndex.search("launch", Set.of("Unclassified"), DocumentIndex.MAX_OFFSET, 10)).isEmpty();
+    }
+
+    @Test
+    void sizesTheResultsByTheHitsRatherThanTheLimit() throws IOException {
+        documentIndex.index(document(1, 0, "Plans", unclassified, "the launch plans"));
+        documentIndex.index(document(2, 0, "Launch", unclassified, "launch launch launch"));
+
+        var hits = documentIndex.search("launch", Set.of("Unclassified"), DocumentIndex.MAX_OFFSET, Integer.MAX_VALUE);
+        assertThat(hits).isEmpty();
+        hits = documentIndex.search("launch", Set.of("Unclassified"), 1, Integer.MAX_VALUE);
+        assertThat(hits).extracting(SearchHit::getId).containsExactly(1L);
+    }
+
+    @Test
+    void rebuildingKeepsChangesMadeWhileItRuns() throws IOException {
+        var stale = document(1, 0, "Plans", unclassified, "the old plans");
+        var current = document(1, 1, "Plans", unclassified, "the new plans");
+        var deleted = document(2, 0, "Memo", unclassified, "an old memo");
+        when(documentRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any()))
+                .thenReturn(List.of(stale, deleted), List.of());
+        // The change and the deletion come in after the build has read the documents
+        when(contentStore.load(stale.getContentHash())).thenAnswer(invocation -> {
+            documentIndex.index(current);
+            documentIndex.remove(deleted.getId());
+            return resource("the old plans");
+        });
+
+        documentIndex.rebuild();
+
+        assertThat(ids("new", "Unclassified")).containsExactly(1L);
+        assertThat(ids("old", "Unclassified")).isEmpty();
+        assertThat(ids("memo", "Unclassified")).isEmpty();
+    }
+
+    @Test
+    void rebuildingFromASnapshotReadsOnlyChangedDocuments() throws IOException {
+        var snapshot = directory.resolve("documents.idx").toString();
+        var unchanged = document(1, 0, "Plans", unclassified, "the launch plans");
+        var renamed = document(2, 0, "Memo", unclassified, "a memo about lunch");
+        var edited = document(3, 0, "Draft", unclassified, "a first draft");
+        var deleted = document(4, 0, "Notes", unclassified, "some notes");
+        documentIndex = documentIndex(snapshot);
+        for (var document : List.of(unchanged, renamed, edited, deleted))
+            documentIndex.index(document);
+        documentIndex.saveSnapshot();
+
+        renamed.setName("Lunch memo");
+        renamed.setVersion(1);
+        var reedited = document(3, 1, "Draft", unclassified, "a second draft");
+        when(documentRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any()))
+                .thenReturn(List.of(unchanged, renamed, reedited), List.of());
+        documentIndex = documentIndex(snapshot);
+        documentIndex.rebuild();
+
+        assertThat(ids("launch", "Unclassified")).containsExactly(1L);
+        assertThat(documentIndex.search("lunch", Set.of("Unclassified"), 0, 10))
+                .extracting(SearchHit::getName).containsExactly("Lunch memo");
+        assertThat(ids("second", "Unclassified")).containsExactly(3L);
+        assertThat(ids("first", "Unclassified")).isEmpty();
+        assertThat(ids("notes", "Unclassified")).isEmpty();
+        verify(contentStore, times(1)).load(unchanged.getContentHash());
+        verify(contentStore, times(1)).load(renamed.getContentHash());
+        verify(contentStore, times(1)).load(reedited.getContentHash());
+    }
+
+    @Test
+    void rebuildsEverythingFromAnUnreadableSnapshot() throws IOException {
+        var snapshot = directory.resolve("documents.idx");
+        Files.writeString(snapshot, "not an index");
+        var document = document(1, 0, "Plans", unclassified, "the launch plans");
+        when(documentRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any()))
+                .thenReturn(List.of(document), List.of());
+        documentIndex = documentIndex(snapshot.toString());
+        documentIndex.rebuild();
+
+        assertThat(ids("launch", "Unclassified")).containsExactly(1L);
+        verify(contentStore, times(1)).load(document.getContentHash());
+    }
+
+    private DocumentIndex documentIndex(String snapshot) {
+        var documentIndex = new DocumentIndex();
+        ReflectionTestUtils.setField(documentIndex, "documentRepository", documentRepository);
+        ReflectionTestUtils.setField(documentIndex, "contentStore", contentStore);
+        ReflectionTestUtils.setField(documentIndex, "labelLattice", labelLattice);
+        ReflectionTestUtils.setField(documentIndex, "snapshot", snapshot);
+        return documentIndex;
+    }
+
+    private List<Long> ids(String query, String... labels) {
+        return documentIndex.search(query, Set.of(labels), 0, 10).stream()
+                .map(SearchHit::getId)
+                .collect(Collectors.toList());
+    }
+
+    private Document document(long id, long version, String name, Label label, String contents) {
+        var document = new Document(name, label, "hash of " + contents, contents.length());
+        document.setId(id);
+        document.setVersion(version);
+        when(contentStore.load(document.getContentHash())).thenReturn(resource(contents));
+        return document;
+    }
+
+    private static ByteArrayResource resource(String contents) {
+        return new ByteArrayResource(contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Label label(long id, String name) {
+        var label = new Label(name);
+        label.setId(id);
+        return label;
+    }
+}
@@ -0,0 +1,112 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTests {
+
+    private static final int BURST = 5;
+    /**
+     * Emission interval at the configured rate of 10 requests per second.
+     */
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdmissionControl admissionControl;
+
+    @BeforeEach
+    void setUp() {
+        var environment = new MockEnvironment()
+                .withProperty("security.admission.read.rate", "10")
+                .withProperty("security.admission.read.burst", String.valueOf(BURST));
+        meterRegistry = new SimpleMeterRegistry();
+        admissionControl = new AdmissionControl(true, environment, meterRegistry);
+    }
+
+    @Test
+    void admitsABurstThenRefusesUntilTheNextInterval() {
+        var now = 1_000_000_000L;
+        for (var i = 0; i < BURST; i++)
+            assertThat(admit("user", now)).isZero();
+
+        assertThat(admit("user", now)).isEqualTo(INTERVAL);
+        assertThat(admit("user", now + INTERVAL / 4)).isEqualTo(INTERVAL * 3 / 4);
+        assertThat(rejected()).isEqualTo(2);
+    }
+
+    @Test
+    void refusedRequestsDoNotUseUpTheAllowance() {
+        var now = 1_000_000_000L;
+        for (var i = 0; i < BURST; i++)
+            admit("user", now);
+        for (var i = 0; i < 100; i++)
+            assertThat(admit("user", now)).isEqualTo(INTERVAL);
+
+        assertThat(admit("user", now + INTERVAL)).isZero();
+        assertThat(admit("user", now + INTERVAL)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void refillsOneRequestPerIntervalUpToTheBurst() {
+        var now = 1_000_000_000L;
+        for (var i = 0; i < BURST; i++)
+            admit("user", now);
+
+        now += 2 * INTERVAL;
+        assertThat(admit("user", now)).isZero();
+        assertThat(admit("user", now)).isZero();
+        assertThat(admit("user", now)).isEqualTo(INTERVAL);
+
+        // However long the pause, no more than a burst is saved up
+        now += 100 * INTERVAL;
+        for (var i = 0; i < BURST; i++)
+            assertThat(admit("user", now)).isZero();
+        assertThat(admit("user", now)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void admitsRequestsArrivingAtTheRateIndefinitely() {
+        var now = 1_000_000_000L;
+        for (var i = 0; i < 10_000; i++, now += INTERVAL)
+            assertThat(admit("user", now)).isZero();
+        assertThat(rejected()).isZero();
+    }
+
+    @Test
+    void limitsSubjectsAndEndpointClassesSeparately() {
+        var now = 1_000_000_000L;
+        for (var i = 0; i < BURST; i++)
+            admit("user", now);
+
+        assertThat(admit("user", now)).isPositive();
+        assertThat(admit("other", now)).isZero();
+        assertThat(admissionControl.admit("user", EndpointClass.WRITE, now)).isZero();
+    }
+
+    @Test
+    void keepsWorkingWhenTheClockOverflows() {
+        var now = Long.MAX_VALUE - INTERVAL / 2;
+        for (var i = 0; i < BURST; i++)
+            assertThat(admit("user", now)).isZero();
+        assertThat(admit("user", now)).isEqualTo(INTERVAL);
+
+        now += INTERVAL;
+        assertThat(now).isNegative();
+        assertThat(admit("user", now)).isZero();
+        assertThat(admit("user", now)).isEqualTo(INTERVAL);
+    }
+
+    private long admit(String subject, long now) {
+        return admissionControl.admit(subject, EndpointClass.READ, now);
+    }
+
+    private double rejected() {
+        return meterRegistry.get("security.admission.rejected").tag("class", "read").counter().count();
+    }
+}
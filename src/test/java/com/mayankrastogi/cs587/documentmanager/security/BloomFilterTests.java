@@ -0,0 +1,52 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTests {
+
+    private static final int CAPACITY = 10_000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Test
+    void containsEveryAddedValue() {
+        var filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_PROBABILITY);
+        for (var i = 0; i < CAPACITY; i++)
+            filter.add("user" + i + "@email.com");
+
+        for (var i = 0; i < CAPACITY; i++)
+            assertThat(filter.mightContain("user" + i + "@email.com")).isTrue();
+    }
+
+    @Test
+    void falsePositivesStayNearTheConfiguredProbabilityAtCapacity() {
+        var filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_PROBABILITY);
+        for (var i = 0; i < CAPACITY; i++)
+            filter.add("user" + i + "@email.com");
+
+        var trials = 100_000;
+        var falsePositives = 0;
+        for (var i = 0; i < trials; i++) {
+            if (filter.mightContain("other" + i + "@email.com"))
+                falsePositives++;
+        }
+        assertThat((double) falsePositives / trials).isLessThan(2 * FALSE_POSITIVE_PROBABILITY);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        var filter = new BloomFilter(CAPACITY, FALSE_POSITIVE_PROBABILITY);
+        for (var i = 0; i < 1000; i++)
+            assertThat(filter.mightContain("user" + i + "@email.com")).isFalse();
+    }
+
+    @Test
+    void capacityIsAtLeastOne() {
+        var filter = new BloomFilter(0, FALSE_POSITIVE_PROBABILITY);
+        filter.add("user@email.com");
+
+        assertThat(filter.capacity()).isEqualTo(1);
+        assertThat(filter.mightContain("user@email.com")).isTrue();
+    }
+}
@@ -0,0 +1,104 @@
+package com.mayankrastogi.cs587.documentmanager.security;
+
+import com.mayankrastogi.cs587.documentmanager.entities.RevokedSubject;
+import com.mayankrastogi.cs587.documentmanager.events.TokensRevokedEvent;
+import com.mayankrastogi.cs587.documentmanager.repositories.RevokedSubjectRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository;
+import com.mayankrastogi.cs587.documentmanager.repositories.UserRepository.TokenGeneration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationsTests {
+
+    private static final long NOW = System.currentTimeMillis();
+
+    private UserRepository userRepository;
+    private RevokedSubjectRepository revokedSubjectRepository;
+    private TokenRevocations tokenRevocations;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        revokedSubjectRepository = mock(RevokedSubjectRepository.class);
+        tokenRevocations = new TokenRevocations();
+        ReflectionTestUtils.setField(tokenRevocations, "userRepository", userRepository);
+        ReflectionTestUtils.setField(tokenRevocations, "revokedSubjectRepository", revokedSubjectRepository);
+        ReflectionTestUtils.setField(tokenRevocations, "expectedSubjects", 4);
+        ReflectionTestUtils.setField(tokenRevocations, "expiration", 24 * 60 * 60);
+    }
+
+    @Test
+    void acceptsTokensOfUsersWithNothingRevoked() {
+        tokenRevocations.load();
+
+        assertThat(tokenRevocations.isRevoked("user@email.com", 0, NOW)).isFalse();
+        assertThat(tokenRevocations.currentGeneration("user@email.com")).isZero();
+    }
+
+    @Test
+    void rejectsOlderGenerationsLoadedAtStartup() {
+        var generation = generation("user@email.com", 2);
+        when(userRepository.findTokenGenerations()).thenReturn(List.of(generation));
+        tokenRevocations.load();
+
+        assertThat(tokenRevocations.isRevoked("user@email.com", 1, NOW)).isTrue();
+        assertThat(tokenRevocations.isRevoked("user@email.com", 2, NOW)).isFalse();
+        assertThat(tokenRevocations.currentGeneration("user@email.com")).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsTokensIssuedBeforeARevocation() {
+        tokenRevocations.load();
+        tokenRevocations.onTokensRevoked(new TokensRevokedEvent("user@email.com", 0, NOW));
+
+        assertThat(tokenRevocations.isRevoked("user@email.com", 0, NOW - 1)).isTrue();
+        assertThat(tokenRevocations.isRevoked("user@email.com", 0, NOW)).isFalse();
+    }
+
+    @Test
+    void neverMovesARevocationBack() {
+        tokenRevocations.load();
+        tokenRevocations.onTokensRevoked(new TokensRevokedEvent("user@email.com", 3, NOW));
+        tokenRevocations.onTokensRevoked(new TokensRevokedEvent("user@email.com", 1, NOW - 1000));
+
+        assertThat(tokenRevocations.isRevoked("user@email.com", 2, NOW + 1)).isTrue();
+        assertThat(tokenRevocations.isRevoked("user@email.com", 3, NOW - 1)).isTrue();
+        assertThat(tokenRevocations.currentGeneration("user@email.com")).isEqualTo(3);
+    }
+
+    @Test
+    void keepsRejectingEverySubjectAfterOutgrowingTheExpectedNumber() {
+        tokenRevocations.load();
+        for (var i = 0; i < 100; i++)
+            tokenRevocations.onTokensRevoked(new TokensRevokedEvent("user" + i + "@email.com", 1, 0));
+
+        for (var i = 0; i < 100; i++)
+            assertThat(tokenRevocations.isRevoked("user" + i + "@email.com", 0, NOW)).isTrue();
+    }
+
+    @Test
+    void rejectsTokensOfRevokedSubjectsLoadedAtStartup() {
+        when(revokedSubjectRepository.findByNotBeforeGreaterThan(anyLong()))
+                .thenReturn(List.of(new RevokedSubject("deleted@email.com", 1, NOW)));
+        tokenRevocations.load();
+
+        assertThat(tokenRevocations.isRevoked("deleted@email.com", 1, NOW - 1)).isTrue();
+        assertThat(tokenRevocations.isRevoked("deleted@email.com", 0, NOW + 1)).isTrue();
+        assertThat(tokenRevocations.isRevoked("deleted@email.com", 1, NOW + 1)).isFalse();
+    }
+
+    private static TokenGeneration generation(String email, long tokenGeneration) {
+        var generation = mock(TokenGeneration.class);
+        when(generation.getEmail()).thenReturn(email);
+        when(generation.getTokenGeneration()).thenReturn(tokenGeneration);
+        return generation;
+    }
+}
@@ -0,0 +1,183 @@
+package com.mayankrastogi.cs587.documentmanager.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentStoreTests {
+
+    private static final int PIECE_THRESHOLD = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void hashesListsEveryStoredBlobOnce() throws IOException {
+        var store = contentStore();
+        // One blob under the compression threshold and one over it, which is stored gzipped
+        var small = store.store("small contents").getHash();
+        var large = store.store("large contents ".repeat(1000)).getHash();
+        store.store("small contents");
+
+        assertThat(hashes(store)).containsExactlyInAnyOrder(small, large);
+    }
+
+    @Test
+    void deletedBlobsAreNoLongerListed() throws IOException {
+        var store = contentStore();
+        var kept = store.store("kept contents").getHash();
+        var deleted = store.store("deleted contents ".repeat(1000)).getHash();
+
+        assertThat(store.deleteIfIdle(deleted, Duration.ofDays(1))).isFalse();
+        assertThat(store.deleteIfIdle(deleted, Duration.ZERO)).isTrue();
+        assertThat(store.deleteIfIdle(deleted, Duration.ZERO)).isFalse();
+
+        assertThat(hashes(store)).containsExactly(kept);
+    }
+
+    @Test
+    void patchingALargeBlobWritesOnlyTheEdits() throws IOException {
+        var store = contentStore();
+        var base = text(new Random(1), 64 * 1024);
+        var original = store.store(base);
+        var written = bytesWritten();
+
+        var patched = store.patch(original.getHash(), patch(30_000, 10, "an edit", "an append"));
+
+        assertThat(bytesWritten() - written).isLessThan(1024);
+        var expected = base.substring(0, 30_000) + "an edit" + base.substring(30_010) + "an append";
+        assertThat(contentsOf(store, patched.getHash())).isEqualTo(expected);
+        assertThat(store.store(expected)).isEqualTo(patched);
+    }
+
+    @Test
+    void patchingALargeBlobRepeatedlyGivesTheSameContentsAsStoringThem() throws IOException {
+        var store = contentStore();
+        var random = new Random(42);
+        var text = new StringBuilder(text(random, 16 * 1024));
+        var hash = store.store(text.toString()).getHash();
+
+        // Enough patches that the piece list is written out in full now and then
+        for (var i = 0; i < 200; i++) {
+            var offset = random.nextInt(text.length() + 1);
+            var length = Math.min(text.length() - offset, random.nextInt(100));
+            var insert = text(random, random.nextInt(40));
+            var append = random.nextInt(4) == 0 ? text(random, 30) : null;
+            text.replace(offset, offset + length, insert);
+            if (append != null)
+                text.append(append);
+
+            hash = store.patch(hash, patch(offset, length, insert, append)).getHash();
+            assertThat(contentsOf(store, hash)).isEqualTo(text.toString());
+        }
+        assertThat(store.store(text.toString()).getHash()).isEqualTo(hash);
+    }
+
+    @Test
+    void blobsAPieceListRefersToAreKeptUntilItIsDeleted() throws IOException {
+        var store = contentStore();
+        var base = text(new Random(3), 8 * 1024);
+        var original = store.store(base).getHash();
+        var patched = store.patch(original, patch(0, 0, "", "more")).getHash();
+
+        assertThat(store.deleteIfIdle(original, Duration.ZERO)).isFalse();
+        assertThat(store.deleteIfIdle(patched, Duration.ZERO)).isTrue();
+        assertThat(store.deleteIfIdle(original, Duration.ZERO)).isTrue();
+    }
+
+    @Test
+    void piecesAreStillReferencedAfterARestart() throws IOException {
+        var store = contentStore();
+        var base = text(new Random(5), 8 * 1024);
+        var original = store.store(base).getHash();
+        var patched = store.patch(original, patch(0, 0, "", "more")).getHash();
+
+        var restarted = contentStore();
+        assertThat(restarted.deleteIfIdle(original, Duration.ZERO)).isFalse();
+        assertThat(contentsOf(restarted, patched)).isEqualTo(base + "more");
+    }
+
+    @Test
+    void rejectsMalformedPatches() throws IOException {
+        var store = contentStore();
+        var hash = store.store("some contents").getHash();
+
+        var nullEdits = new ContentPatch();
+        nullEdits.setEdits(null);
+        nullEdits.setAppend(" and more");
+        assertThat(contentsOf(store, store.patch(hash, nullEdits).getHash())).isEqualTo("some contents and more");
+
+        var nullEdit = new ContentPatch();
+        nullEdit.setEdits(Collections.singletonList(null));
+        assertThatThrownBy(() -> store.patch(hash, nullEdit)).isInstanceOf(IllegalArgumentException.class);
+
+        var nullText = patch(0, 4, "", null);
+        nullText.getEdits().get(0).setText(null);
+        assertThatThrownBy(() -> store.patch(hash, nullText)).isInstanceOf(IllegalArgumentException.class);
+
+        var overflowing = patch(5, Long.MAX_VALUE, "x", null);
+        assertThatThrownBy(() -> store.patch(hash, overflowing)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ContentStore contentStore() throws IOException {
+        return new ContentStore(directory.toString(), 1024, Duration.ofDays(7), PIECE_THRESHOLD,
+                new SimpleMeterRegistry());
+    }
+
+    private static List<String> hashes(ContentStore store) throws IOException {
+        try (var hashes = store.hashes()) {
+            return hashes.collect(Collectors.toList());
+        }
+    }
+
+    private static String contentsOf(ContentStore store, String hash) throws IOException {
+        try (var contents = store.load(hash).getInputStream()) {
+            return new String(contents.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long bytesWritten() throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * A patch with at most one edit, which is left out if it would change nothing.
+     */
+    private static ContentPatch patch(long offset, long length, String text, String append) {
+        var patch = new ContentPatch();
+        if (length > 0 || !text.isEmpty()) {
+            var edit = new ContentPatch.Edit();
+            edit.setOffset(offset);
+            edit.setLength(length);
+            edit.setText(text);
+            patch.setEdits(List.of(edit));
+        }
+        patch.setAppend(append);
+        return patch;
+    }
+
+    /**
+     * ASCII text, so that character and byte offsets agree.
+     */
+    private static String text(Random random, int length) {
+        var text = new StringBuilder(length);
+        while (text.length() < length)
+            text.append((char) ('a' + random.nextInt(26))).append(random.nextInt(8) == 0 ? " " : "");
+        return text.substring(0, length);
+    }
+}
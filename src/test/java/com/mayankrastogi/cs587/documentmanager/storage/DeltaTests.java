@@ -0,0 +1,155 @@
+package com.mayankrastogi.cs587.documentmanager.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeltaTests {
+
+    private static final String[] WORDS = {"the", "label", "secret", "document", "clearance", "café", "naïve",
+            "日本語", "Ελληνικά", "😀", "\n"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void applyingADeltaGivesItsTarget() {
+        var text = words(new Random(1), 4000);
+        assertRoundTrip("", "");
+        assertRoundTrip("", text);
+        assertRoundTrip(text, "");
+        assertRoundTrip(text, text);
+        assertRoundTrip(text, "prefix " + text + " suffix");
+        assertRoundTrip(text, text.substring(text.length() / 2) + text.substring(0, text.length() / 2));
+    }
+
+    @Test
+    void applyingADeltaGivesItsTargetAfterRandomEdits() {
+        var random = new Random(42);
+        var text = new StringBuilder(words(random, 8000));
+        for (var i = 0; i < 500; i++) {
+            var base = text.toString();
+            edit(text, random);
+            assertRoundTrip(base, text.toString());
+        }
+    }
+
+    @Test
+    void applyingADeltaGivesItsTargetForBinaryContents() {
+        var random = new Random(7);
+        for (var i = 0; i < 100; i++) {
+            var base = new byte[random.nextInt(5000)];
+            random.nextBytes(base);
+            var target = base.clone();
+            for (var j = 0; j < 10 && target.length > 0; j++)
+                target[random.nextInt(target.length)] ^= (byte) (1 + random.nextInt(255));
+
+            assertThat(Delta.apply(base, Delta.compute(base, target))).isEqualTo(target);
+        }
+    }
+
+    @Test
+    void deltasOfSmallEditsAreSmall() {
+        var base = words(new Random(3), 64 * 1024);
+        var target = base.substring(0, 30_000) + "an edit" + base.substring(30_100);
+
+        assertThat(delta(base, target).length).isLessThan(100);
+    }
+
+    @Test
+    void rejectsDeltasForAnotherBase() {
+        var base = words(new Random(5), 100);
+        var delta = delta(base, base + "more");
+
+        assertThatThrownBy(() -> Delta.apply(new byte[4], delta)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Delta.apply(new byte[0], new byte[]{(byte) 0x80}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void patchingWithADiffGivesItsTarget() throws IOException {
+        var store = contentStore();
+        assertDiffPatches(store, "", "new contents");
+        assertDiffPatches(store, "old contents", "");
+        assertDiffPatches(store, "same contents", "same contents");
+        assertDiffPatches(store, "one two three four", "zero one three four five");
+    }
+
+    @Test
+    void patchingWithADiffGivesItsTargetWhenEditsTouchMultiByteCharacters() throws IOException {
+        var store = contentStore();
+        // é and è share their first byte, so a byte-level diff would start inside the character
+        assertDiffPatches(store, "café au lait", "cafè au lait");
+        // Likewise 本 and 末 differ only in their last byte, as do the two emoji
+        assertDiffPatches(store, "日本語のテキスト", "日末語のテキスト");
+        assertDiffPatches(store, "emoji 😀 here", "emoji 😁 here");
+        assertDiffPatches(store, "Ελληνικά", "Ελλxνικά");
+        assertDiffPatches(store, "日本語", "");
+    }
+
+    @Test
+    void patchingWithADiffGivesItsTargetAfterRandomEdits() throws IOException {
+        var store = contentStore();
+        var random = new Random(11);
+        var text = new StringBuilder(words(random, 4000));
+        for (var i = 0; i < 200; i++) {
+            var base = text.toString();
+            edit(text, random);
+            assertDiffPatches(store, base, text.toString());
+        }
+    }
+
+    private ContentStore contentStore() throws IOException {
+        return new ContentStore(directory.toString(), 1024, Duration.ofDays(7), 1024 * 1024, new SimpleMeterRegistry());
+    }
+
+    private static void assertRoundTrip(String base, String target) {
+        var baseBytes = base.getBytes(StandardCharsets.UTF_8);
+        var targetBytes = target.getBytes(StandardCharsets.UTF_8);
+        assertThat(Delta.apply(baseBytes, Delta.compute(baseBytes, targetBytes))).isEqualTo(targetBytes);
+    }
+
+    private static void assertDiffPatches(ContentStore store, String base, String target) throws IOException {
+        var patch = Delta.diff(base.getBytes(StandardCharsets.UTF_8), target.getBytes(StandardCharsets.UTF_8));
+        for (var edit : patch.getEdits())
+            assertThat(edit.getText()).doesNotContain("\uFFFD");
+
+        var patched = store.patch(store.store(base).getHash(), patch);
+        try (var contents = store.load(patched.getHash()).getInputStream()) {
+            assertThat(new String(contents.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(target);
+        }
+    }
+
+    private static byte[] delta(String base, String target) {
+        return Delta.compute(base.getBytes(StandardCharsets.UTF_8), target.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replaces, inserts or deletes a few words somewhere in the text, without splitting surrogate pairs.
+     */
+    private static void edit(StringBuilder text, Random random) {
+        var start = random.nextInt(text.length() + 1);
+        var end = Math.min(text.length(), start + random.nextInt(50));
+        if (start < text.length() && Character.isLowSurrogate(text.charAt(start)))
+            start--;
+        if (end < text.length() && Character.isLowSurrogate(text.charAt(end)))
+            end++;
+        text.replace(start, end, random.nextInt(3) == 0 ? "" : words(random, 1 + random.nextInt(60)));
+    }
+
+    private static String words(Random random, int length) {
+        var words = new StringBuilder(length + 16);
+        while (words.length() < length)
+            words.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        return words.toString();
+    }
+}